@@ -0,0 +1,179 @@
+//A small throughput harness in the style of JMH's Thrpt mode: warmup iterations, then
+//measured iterations, each running an operation in a tight loop on N threads and
+//reporting operations per second as mean +- standard deviation. Operations that use up
+//their state (a Batched benchmark) are run in batches with the reset between them off the
+//clock.
+
+package medleySimulation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BenchmarkHarness {
+
+	// one operation being measured, with whatever per-thread state it needs
+	public interface Operation {
+		void run() throws Exception;
+	}
+
+	// builds the Operation one thread of an iteration runs
+	public interface PerThread {
+		Operation forThread(int thread) throws Exception;
+	}
+
+	// a PerThread whose operations fill up shared state that has to be reset now and then:
+	// every thread runs batchSize() operations, then they all wait while resetBatch() runs
+	// untimed, and so on until the iteration is over
+	public interface Batched extends PerThread {
+		int batchSize();
+
+		void resetBatch() throws Exception;
+	}
+
+	// something to benchmark: shared state for an iteration on this many threads
+	public interface Benchmark {
+		PerThread setUp(int threads) throws Exception;
+	}
+
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationMs;
+
+	public BenchmarkHarness(int warmupIterations, int measurementIterations, long iterationMs) {
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationMs = iterationMs;
+	}
+
+	// run a benchmark on this many threads and print one result line
+	public void run(String name, int threads, Benchmark benchmark) throws Exception {
+		double[] scores = new double[measurementIterations];
+		for (int i = 0; i < warmupIterations + measurementIterations; i++) {
+			double score = iteration(threads, benchmark.setUp(threads)); // fresh state every iteration
+			if (i >= warmupIterations)
+				scores[i - warmupIterations] = score;
+		}
+		double mean = 0;
+		for (double score : scores)
+			mean += score;
+		mean /= scores.length;
+		double variance = 0;
+		for (double score : scores)
+			variance += (score - mean) * (score - mean);
+		double error = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : 0;
+		System.out.printf("%-40s %8d %16.1f +- %12.1f ops/s%n", name, threads, mean, error);
+	}
+
+	// header matching the result lines
+	public static void printHeader() {
+		System.out.printf("%-40s %8s %16s    %12s%n", "Benchmark", "Threads", "Score", "Error");
+	}
+
+	// one timed iteration - all threads start together and stop together
+	private double iteration(int threads, PerThread operations) throws Exception {
+		if (operations instanceof Batched)
+			return batchedIteration(threads, (Batched) operations);
+		LongAdder ops = new LongAdder();
+		CountDownLatch ready = new CountDownLatch(threads);
+		CountDownLatch go = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		final boolean[] failed = new boolean[1];
+		final Stop stop = new Stop();
+		for (int t = 0; t < threads; t++) {
+			Operation op = operations.forThread(t);
+			workers[t] = new Thread(() -> {
+				long count = 0;
+				try {
+					ready.countDown();
+					go.await();
+					while (!stop.requested) {
+						op.run();
+						count++;
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+					failed[0] = true;
+				}
+				ops.add(count);
+			});
+			workers[t].start();
+		}
+		ready.await();
+		long start = System.nanoTime();
+		go.countDown();
+		Thread.sleep(iterationMs);
+		stop.requested = true;
+		for (Thread worker : workers)
+			worker.join();
+		if (failed[0])
+			throw new IllegalStateException("benchmark operation failed");
+		return ops.sum() / ((System.nanoTime() - start) / 1e9);
+	}
+
+	// the same in batches - only the batches are timed, from the barrier releasing the
+	// threads to the last of them finishing, so a reset costs the score nothing
+	private double batchedIteration(int threads, Batched operations) throws Exception {
+		LongAdder ops = new LongAdder();
+		Thread[] workers = new Thread[threads];
+		final boolean[] failed = new boolean[1];
+		final Stop stop = new Stop();
+		final long[] clock = new long[2]; // batch start, timed nanoseconds so far - only touched by the barrier action
+		final boolean[] done = new boolean[1]; // written by the barrier action, read after it
+		CyclicBarrier batchDone = new CyclicBarrier(threads, () -> {
+			long now = System.nanoTime();
+			if (clock[0] != 0)
+				clock[1] += now - clock[0];
+			if (stop.requested || failed[0]) {
+				done[0] = true;
+				return;
+			}
+			try {
+				operations.resetBatch();
+			} catch (Exception e) {
+				e.printStackTrace();
+				failed[0] = true;
+				done[0] = true;
+				return;
+			}
+			clock[0] = System.nanoTime();
+		});
+		int batchSize = operations.batchSize();
+		for (int t = 0; t < threads; t++) {
+			Operation op = operations.forThread(t);
+			workers[t] = new Thread(() -> {
+				long count = 0;
+				try {
+					batchDone.await(); // the first trip resets and starts the clock
+					while (!done[0]) {
+						try {
+							for (int i = 0; i < batchSize; i++)
+								op.run();
+							count += batchSize;
+						} catch (Exception e) {
+							e.printStackTrace();
+							failed[0] = true; // keep turning up at the barrier so the others are not stranded
+						}
+						batchDone.await();
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+					failed[0] = true;
+				}
+				ops.add(count);
+			});
+			workers[t].start();
+		}
+		Thread.sleep(iterationMs);
+		stop.requested = true;
+		for (Thread worker : workers)
+			worker.join();
+		if (failed[0])
+			throw new IllegalStateException("benchmark operation failed");
+		return ops.sum() / (clock[1] / 1e9);
+	}
+
+	private static final class Stop {
+		volatile boolean requested;
+	}
+}
@@ -0,0 +1,110 @@
+//Stress checks for the grid's concurrency guarantees - races that are too rare to see in
+//a normal run, repeated until they happen. Each check prints one line and the program
+//exits with status 1 if any of them failed.
+//usage: GridChecks [rounds]
+
+package medleySimulation;
+
+import java.awt.Color;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class GridChecks {
+
+	// A cancel racing an async move that has just won its block must leave the person where
+	// they were and give the block back so that a blocked mover waiting for it still gets it
+	static boolean asyncCancel(StadiumGrid.LockingMode mode, int rounds) throws Exception {
+		ExecutorService pool = Executors.newCachedThreadPool();
+		int cancelled = 0, moved = 0, failed = 0;
+		try {
+			for (int round = 0; round < rounds && failed == 0; round++) {
+				StadiumGrid grid = new StadiumGrid(20, 40, 1, new FinishCounter(1), mode);
+				grid.setAsyncExecutor(pool);
+				PeopleLocation mover = new PeopleLocation(0, Color.black); // the async move
+				PeopleLocation holder = new PeopleLocation(1, Color.black); // on the block, steps off
+				PeopleLocation blocked = new PeopleLocation(2, Color.black); // waits for the block
+				GridBlock from = RaceBenchmarks.claim(grid, mover, 5, 10);
+				GridBlock wanted = RaceBenchmarks.claim(grid, holder, 6, 10);
+				GridBlock behind = RaceBenchmarks.claim(grid, blocked, 7, 10);
+
+				Future<GridBlock> waiter = pool.submit(() -> grid.moveTowards(behind, 6, 10, blocked));
+				Thread.sleep(0, 200_000); // time for the blocked mover to find the block taken and park
+				CompletableFuture<GridBlock> async = grid.moveTowardsAsync(from, 6, 10, mover);
+				Future<?> stepOff = pool.submit(() -> grid.moveTowards(wanted, 6, 11, holder));
+				if ((round & 1) == 0)
+					Thread.yield(); // vary which side of the release the cancel lands
+				boolean wasCancelled = async.cancel(false);
+				stepOff.get(1, TimeUnit.SECONDS);
+
+				if (wasCancelled) {
+					cancelled++;
+					if (mover.getLocation() != from || from.owner() != 0)
+						failed++;
+				} else {
+					moved++;
+					if (async.get(1, TimeUnit.SECONDS) != wanted || mover.getLocation() != wanted)
+						failed++;
+					else
+						grid.moveTowards(wanted, 6, 9, mover); // out of the way again
+				}
+				try {
+					if (waiter.get(2, TimeUnit.SECONDS) != wanted)
+						failed++;
+				} catch (TimeoutException e) {
+					failed++; // never woken
+					waiter.cancel(true);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		System.out.printf("%-40s %s cancelled=%d moved=%d%n", "asyncCancel:" + mode, failed == 0 ? "ok" : "FAILED",
+				cancelled, moved);
+		return failed == 0;
+	}
+
+	// A block an async move won and gave back because it was cancelled must wake a mover
+	// parked waiting for it, however that locking mode parks them. The race that leads here
+	// is too narrow to hit reliably, so the winning try is played out directly
+	static boolean giveBackWakes(StadiumGrid.LockingMode mode, int rounds) throws Exception {
+		ExecutorService pool = Executors.newCachedThreadPool();
+		int failed = 0;
+		try {
+			for (int round = 0; round < rounds && failed == 0; round++) {
+				StadiumGrid grid = new StadiumGrid(20, 40, 1, new FinishCounter(1), mode);
+				PeopleLocation blocked = new PeopleLocation(2, Color.black);
+				GridBlock wanted = grid.whichBlock(6, 10);
+				GridBlock behind = RaceBenchmarks.claim(grid, blocked, 7, 10);
+				wanted.get(0); // the async move's try has just won it
+				Future<GridBlock> waiter = pool.submit(() -> grid.moveTowards(behind, 6, 10, blocked));
+				Thread.sleep(0, 200_000); // time for the blocked mover to find the block taken and park
+				grid.giveBack(wanted); // ...and the move was cancelled
+				try {
+					if (waiter.get(2, TimeUnit.SECONDS) != wanted)
+						failed++;
+				} catch (TimeoutException e) {
+					failed++; // never woken
+					waiter.cancel(true);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		System.out.printf("%-40s %s%n", "giveBackWakes:" + mode, failed == 0 ? "ok" : "FAILED");
+		return failed == 0;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		boolean ok = true;
+		for (StadiumGrid.LockingMode mode : StadiumGrid.LockingMode.values()) {
+			ok &= asyncCancel(mode, rounds);
+			ok &= giveBackWakes(mode, rounds / 20);
+		}
+		System.exit(ok ? 0 : 1);
+	}
+}
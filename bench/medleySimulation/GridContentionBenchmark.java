@@ -0,0 +1,85 @@
+//Contention benchmark for StadiumGrid movement.
+//Each thread swims up and down its own lane with no sleeps, so the only thing
+//slowing it down is the locking - compares the global monitor with per-block locking.
+
+package medleySimulation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+public class GridContentionBenchmark {
+
+	static final int laneWidth = 5; // lanes are at i % 5 == 1, as in StadiumGrid
+	static final int gridY = 120;
+
+	// run one measurement: nThreads swimmers, one per lane, for durationMs
+	static double movesPerSecond(StadiumGrid.LockingMode mode, int nThreads, long durationMs)
+			throws InterruptedException {
+		StadiumGrid grid = new StadiumGrid(nThreads * laneWidth, gridY, nThreads, new FinishCounter(), mode);
+		AtomicBoolean running = new AtomicBoolean(true);
+		LongAdder moves = new LongAdder();
+		CountDownLatch ready = new CountDownLatch(nThreads);
+		CountDownLatch go = new CountDownLatch(1);
+		Thread[] threads = new Thread[nThreads];
+
+		for (int t = 0; t < nThreads; t++) {
+			final int lane = t * laneWidth + 1;
+			final PeopleLocation loc = new PeopleLocation(t, java.awt.Color.black);
+			threads[t] = new Thread(() -> {
+				try {
+					int top = grid.getStartY() - 1;
+					GridBlock current = grid.whichBlock(lane, top);
+					current.get(loc.getID());
+					loc.setLocation(current);
+					ready.countDown();
+					go.await();
+					long count = 0;
+					int target = 0;
+					while (running.get()) {
+						current = grid.moveTowards(current, lane, target, loc);
+						if (current.getY() == target)
+							target = (target == 0) ? top : 0; // turn at the wall
+						count++;
+					}
+					moves.add(count);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			threads[t].start();
+		}
+		ready.await();
+		long start = System.nanoTime();
+		go.countDown();
+		Thread.sleep(durationMs);
+		running.set(false);
+		for (Thread thread : threads)
+			thread.join();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		return moves.sum() / seconds;
+	}
+
+	// usage: GridContentionBenchmark [maxThreads] [durationMs] [spinLimit]
+	public static void main(String[] args) throws InterruptedException {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		long durationMs = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		if (args.length > 2)
+			GridBlock.spinLimit = Integer.parseInt(args[2]); // spin before parking on a busy block
+
+		// warm up both paths before measuring
+		for (StadiumGrid.LockingMode mode : StadiumGrid.LockingMode.values())
+			movesPerSecond(mode, 4, durationMs);
+
+		System.out.printf("%-8s", "threads");
+		for (StadiumGrid.LockingMode mode : StadiumGrid.LockingMode.values())
+			System.out.printf("%20s", mode + " moves/s");
+		System.out.println();
+		for (int n = 1; n <= maxThreads; n = (n < maxThreads) ? Math.min(n * 2, maxThreads) : n + 1) {
+			System.out.printf("%-8d", n);
+			for (StadiumGrid.LockingMode mode : StadiumGrid.LockingMode.values())
+				System.out.printf("%20.0f", movesPerSecond(mode, n, durationMs));
+			System.out.println();
+		}
+	}
+}
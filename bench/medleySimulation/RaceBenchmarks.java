@@ -0,0 +1,199 @@
+//Benchmark suite for the hot paths of the simulation: grid movement, block claims, the
+//finish line and whole races. Every locking or engine change should be judged against it.
+//usage: RaceBenchmarks [maxThreads] [nameFilterRegex] [iterationMs]
+
+package medleySimulation;
+
+import java.awt.Color;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+public class RaceBenchmarks {
+
+	static final int laneWidth = 5; // lanes are at i % 5 == 1, as in StadiumGrid
+	static final int gridY = 120;
+
+	// a grid with one lane per thread
+	static StadiumGrid laneGrid(int threads, StadiumGrid.LockingMode mode) throws InterruptedException {
+		return laneGrid(threads, mode, StadiumGrid.GridBackend.OBJECTS);
+	}
+
+	static StadiumGrid laneGrid(int threads, StadiumGrid.LockingMode mode, StadiumGrid.GridBackend backend)
+			throws InterruptedException {
+		int lanes = Math.max(threads, 2);
+		return new StadiumGrid(new SimulationConfig().setNumTeams(lanes).setGrid(lanes * laneWidth, gridY)
+				.setLockingMode(mode).setBackend(backend), new FinishCounter());
+	}
+
+	// place a person on a block they own
+	static GridBlock claim(StadiumGrid grid, PeopleLocation loc, int x, int y) throws InterruptedException {
+		GridBlock block = grid.whichBlock(x, y);
+		block.get(loc.getID());
+		loc.setLocation(block);
+		return block;
+	}
+
+	// moveTowards: each thread swims up and down its own lane, so only locking overhead is measured
+	static BenchmarkHarness.Benchmark moveTowards(StadiumGrid.LockingMode mode, StadiumGrid.GridBackend backend) {
+		return threads -> {
+			StadiumGrid grid = laneGrid(threads, mode, backend);
+			return t -> {
+				int lane = t * laneWidth + 1;
+				PeopleLocation loc = new PeopleLocation(t, Color.black);
+				return new BenchmarkHarness.Operation() {
+					int top = grid.getStartY() - 1;
+					int target = 0;
+					GridBlock current = claim(grid, loc, lane, top);
+
+					public void run() throws InterruptedException {
+						current = grid.moveTowards(current, lane, target, loc);
+						if (current.getY() == target)
+							target = (target == 0) ? top : 0;
+					}
+				};
+			};
+		};
+	}
+
+	// moveTowards on the flat grid - the same lanes, with blocks as indexes
+	static BenchmarkHarness.Benchmark flatMoveTowards() {
+		return threads -> {
+			FlatStadiumGrid grid = new FlatStadiumGrid(Math.max(threads, 2) * laneWidth, gridY, Math.max(threads, 2));
+			return t -> {
+				int lane = t * laneWidth + 1;
+				return new BenchmarkHarness.Operation() {
+					int top = grid.getStartY() - 1;
+					int target = 0;
+					int current = grid.whichBlock(lane, top);
+
+					{
+						grid.get(current, t);
+					}
+
+					public void run() throws InterruptedException {
+						current = grid.moveTowards(current, lane, target, t);
+						if (grid.getY(current) == target)
+							target = (target == 0) ? top : 0;
+					}
+				};
+			};
+		};
+	}
+
+	// jumpTo: each thread levitates between two blocks in its own lane
+	static BenchmarkHarness.Benchmark jumpTo(StadiumGrid.LockingMode mode) {
+		return threads -> {
+			StadiumGrid grid = laneGrid(threads, mode);
+			return t -> {
+				int lane = t * laneWidth + 1;
+				PeopleLocation loc = new PeopleLocation(t, Color.black);
+				return new BenchmarkHarness.Operation() {
+					GridBlock current = claim(grid, loc, lane, 0);
+
+					public void run() throws InterruptedException {
+						current = grid.jumpTo(current, lane, current.getY() == 0 ? 2 : 0, loc);
+					}
+				};
+			};
+		};
+	}
+
+	// GridBlock.get/release on a block nobody else touches
+	static BenchmarkHarness.Benchmark getReleaseUncontended() {
+		return threads -> t -> {
+			GridBlock block = new GridBlock(t, 0, false);
+			return () -> {
+				block.get(t);
+				block.release();
+			};
+		};
+	}
+
+	// GridBlock.get/release with every thread competing for one block
+	static BenchmarkHarness.Benchmark getReleaseContended() {
+		return threads -> {
+			GridBlock shared = new GridBlock(0, 0, false);
+			return t -> () -> {
+				if (shared.get(t))
+					shared.release();
+			};
+		};
+	}
+
+	// FinishCounter.finishRace hammered by every thread. Every call records a place, in a
+	// counter with room for a whole batch from every thread, so none is ever full - the
+	// harness resets it between batches, off the clock
+	static BenchmarkHarness.Benchmark finishRace() {
+		return threads -> {
+			int batch = 10_000;
+			FinishCounter finish = new FinishCounter(threads * batch);
+			return new BenchmarkHarness.Batched() {
+				@Override
+				public BenchmarkHarness.Operation forThread(int t) {
+					return () -> finish.finishRace(t, t);
+				}
+
+				@Override
+				public int batchSize() {
+					return batch;
+				}
+
+				@Override
+				public void resetBatch() {
+					finish.reset();
+				}
+			};
+		};
+	}
+
+	// whole headless races per second, in the discrete-event engine (threaded races are
+	// dominated by their sleeps - time those with HeadlessSimulation instead)
+	static BenchmarkHarness.Benchmark eventRaces() {
+		return threads -> t -> {
+			SplittableRandom seeds = new SplittableRandom(t);
+			return () -> new DiscreteEventRace(10, 50, gridY, seeds.nextLong()).run();
+		};
+	}
+
+	// the same, but each thread resets one race instead of building a new one
+	static BenchmarkHarness.Benchmark eventRacesReused() {
+		return threads -> t -> {
+			SplittableRandom seeds = new SplittableRandom(t);
+			DiscreteEventRace race = new DiscreteEventRace(10, 50, gridY, seeds.nextLong());
+			return () -> {
+				race.reset(seeds.nextLong());
+				race.run();
+			};
+		};
+	}
+
+	public static void main(String[] args) throws Exception {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		Pattern filter = Pattern.compile(args.length > 1 ? args[1] : ".*");
+		long iterationMs = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+		BenchmarkHarness harness = new BenchmarkHarness(2, 5, iterationMs);
+
+		BenchmarkHarness.printHeader();
+		for (int threads = 1; threads <= maxThreads; threads = (threads < maxThreads) ? Math.min(threads * 2, maxThreads) : threads + 1) {
+			for (StadiumGrid.LockingMode mode : StadiumGrid.LockingMode.values()) {
+				run(harness, filter, "StadiumGrid.moveTowards:" + mode, threads,
+						moveTowards(mode, StadiumGrid.GridBackend.OBJECTS));
+				run(harness, filter, "StadiumGrid.jumpTo:" + mode, threads, jumpTo(mode));
+			}
+			run(harness, filter, "StadiumGrid.moveTowards:PER_BLOCK:flat", threads,
+					moveTowards(StadiumGrid.LockingMode.PER_BLOCK, StadiumGrid.GridBackend.FLAT));
+			run(harness, filter, "FlatStadiumGrid.moveTowards", threads, flatMoveTowards());
+			run(harness, filter, "GridBlock.getRelease:uncontended", threads, getReleaseUncontended());
+			run(harness, filter, "GridBlock.getRelease:contended", threads, getReleaseContended());
+			run(harness, filter, "FinishCounter.finishRace", threads, finishRace());
+			run(harness, filter, "HeadlessSimulation.eventRaces", threads, eventRaces());
+			run(harness, filter, "HeadlessSimulation.eventRacesReused", threads, eventRacesReused());
+		}
+	}
+
+	private static void run(BenchmarkHarness harness, Pattern filter, String name, int threads,
+			BenchmarkHarness.Benchmark benchmark) throws Exception {
+		if (filter.matcher(name).find())
+			harness.run(name, threads, benchmark);
+	}
+}
@@ -0,0 +1,70 @@
+//The stadium entrance - several entrance blocks that swimmers come in through in
+//parallel. Each team is assigned one entrance (team % entrances) and every entrance
+//has its own ticket queue in swimmer ID order, so teammates still come in one after
+//another in stroke order and walk to their block single file, as with the old one-at-
+//a-time chain. When a swimmer steps off an entrance only the next ticket holder for
+//that entrance is woken.
+
+package medleySimulation;
+
+public class AdmissionGate {
+	private final GridBlock[] entrances;
+	private final int numTeams;
+	private final int teamSize;
+	private final RaceSignal[] called; // one per swimmer, opened when it is their turn
+
+	AdmissionGate(GridBlock[] entrances, int numTeams, int teamSize) {
+		this.entrances = entrances;
+		this.numTeams = numTeams;
+		this.teamSize = teamSize;
+		called = new RaceSignal[numTeams * teamSize];
+		for (int id = 0; id < called.length; id++)
+			called[id] = new RaceSignal();
+		reset();
+	}
+
+	// back to the start of a race - only the first ticket at each entrance called
+	void reset() {
+		for (RaceSignal signal : called)
+			signal.close();
+		for (int k = 0; k < entrances.length && k < numTeams; k++)
+			called[k * teamSize].open(); // first swimmer of the first team at each entrance
+	}
+
+	// the entrance a swimmer comes in by
+	public GridBlock entranceFor(int id) {
+		return entrances[(id / teamSize) % entrances.length];
+	}
+
+	// wait until it is this swimmer's turn, then take their entrance
+	public GridBlock admit(int id) throws InterruptedException {
+		called[id].await();
+		return entranceFor(id);
+	}
+
+	// this swimmer's entrance if it is their turn, otherwise null
+	public GridBlock tryAdmit(int id) {
+		return called[id].isOpen() ? entranceFor(id) : null;
+	}
+
+	// the swimmer has stepped off their entrance - call the next ticket for it.
+	// Returns the ID of the swimmer called, -1 if nobody else uses this entrance
+	public int leave(int id) {
+		int team = id / teamSize;
+		int leg = id % teamSize;
+		int next;
+		if (leg + 1 < teamSize)
+			next = id + 1; // next teammate
+		else if (team + entrances.length < numTeams)
+			next = (team + entrances.length) * teamSize; // first swimmer of the next team here
+		else
+			return -1;
+		called[next].open();
+		return next;
+	}
+
+	// how many swimmers can come in at once
+	public int capacity() {
+		return entrances.length;
+	}
+}
@@ -7,12 +7,12 @@ import java.awt.Color;
 import javax.swing.JLabel;
 import javax.swing.SwingUtilities;
 
-// Thread class to update the display of text fields
-public class CounterDisplay implements Runnable {
+// Updates the winner label when the FinishCounter reports a finish - no thread of its
+// own and no polling, the label is only touched when a placing changes
+public class CounterDisplay implements FinishListener {
 
     private final FinishCounter results;
     private final JLabel winnerLabel;
-    private volatile boolean running = true; // Flag to control the thread loop
 
     // Constructor to initialize labels and finish counter
     public CounterDisplay(JLabel winnerLabel, FinishCounter results) {
@@ -20,32 +20,31 @@ public class CounterDisplay implements Runnable {
         this.results = results;
     }
 
+    // Show the current state and start listening for finishes
+    public void start() {
+        results.addListener(this);
+        SwingUtilities.invokeLater(this::update);
+    }
+
     @Override
-    public void run() {
-        while (running) {
-            try {
-                // Check if the race is won and update the labels
-                SwingUtilities.invokeLater(() -> {
-                    if (results.isRaceWon()) {
-                        winnerLabel.setForeground(Color.RED);
-                        winnerLabel.setText("1st Winning Team: " + results.getWinningTeam());
-                    } else {
-                        winnerLabel.setForeground(Color.BLACK);
-                        winnerLabel.setText("Winner: ");
-                    }
-                });
-
-                // Sleep for a short period to reduce CPU usage
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt(); // Restore the interrupted status
-                running = false; // Stop the loop if interrupted
-            }
+    public void placingRecorded(RacePlacing placing) {
+        SwingUtilities.invokeLater(this::update); // one update per finish
+    }
+
+    // Check if the race is won and update the label - runs on the event dispatch thread
+    private void update() {
+        if (results.isRaceWon()) {
+            winnerLabel.setForeground(Color.RED);
+            winnerLabel.setText("1st Winning Team: " + results.getWinningTeam() + "  (" + results.getPlacingCount()
+                    + " finished)");
+        } else {
+            winnerLabel.setForeground(Color.BLACK);
+            winnerLabel.setText("Winner: ");
         }
     }
 
-    // Method to stop the thread gracefully
+    // Method to stop listening for results
     public void stop() {
-        running = false;
+        results.removeListener(this);
     }
 }
@@ -0,0 +1,153 @@
+//Routes swimmers across the deck to their starting blocks by static shortest paths, with a
+//sidestep around whoever is on the next block, instead of one fixed greedy step at a time.
+//Swimmers only walk on the walkway - the deck rows between the queues under the starting
+//blocks and the benches, less the entrances - and up their own lane's queue at the end,
+//since people stand still on starting blocks, in the queues and on benches, and come in on
+//the entrances, and walking into one could block everyone for good.
+//For each target block there is a distance field: steps to the target from every walkway
+//block, found by a breadth-first search and cached on first use. The fields only know the
+//walkway's shape, which does not change during a race, so they never go stale - but they
+//know nothing of where people are. Occupancy is only read one step ahead: of the blocks one
+//step closer to the target, a swimmer takes a free one, preferring the greedy step. So a
+//swimmer sidesteps someone right in front, but still walks up behind a crowd further on.
+//Teammates must still reach their block in stroke order, as they did single file, so a
+//swimmer never gets as close to the block as a teammate ahead of them who is still walking.
+
+package medleySimulation;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class DeckPathPlanner {
+	// the eight one block moves, straight ones first so they win ties
+	private static final int[] stepX = { 1, -1, 0, 0, 1, 1, -1, -1 };
+	private static final int[] stepY = { 0, 0, 1, -1, 1, -1, 1, -1 };
+
+	private final StadiumGrid stadium;
+	private final int width; // deck columns - the whole grid width
+	private final int top; // first deck row - the starting blocks
+	private final int queueRows; // rows under each starting block where the next swimmers wait
+	private final int bottom; // last walkway row - the benches are below it
+	private final int entrances; // entrance blocks in column 0, from bottom up
+	private final int teamSize;
+	private final ConcurrentHashMap<GridBlock, int[]> fields = new ConcurrentHashMap<>(); // by target
+	private final AtomicIntegerArray progress; // per swimmer: distance of their current step, 0 when there
+
+	DeckPathPlanner(StadiumGrid stadium, int numSwimmers, int teamSize, int entrances) {
+		this.stadium = stadium;
+		this.teamSize = teamSize;
+		this.entrances = entrances;
+		progress = new AtomicIntegerArray(numSwimmers);
+		width = stadium.getMaxX();
+		top = stadium.getStartY();
+		queueRows = Swimmer.SwimStroke.values().length;
+		bottom = stadium.getMaxY() - Swimmer.SwimStroke.values().length - 1;
+	}
+
+	// nobody walking - only between races
+	public void reset() {
+		for (int i = 0; i < progress.length(); i++)
+			progress.set(i, 0);
+	}
+
+	// can a swimmer heading for the starting block in column laneX walk through here?
+	public boolean onWalkway(int x, int y, int laneX) {
+		if (x < 0 || x >= width || y <= top || y > bottom)
+			return false;
+		if (x == 0 && y > bottom - entrances)
+			return false; // an entrance - swimmers leave theirs by the greedy step
+		return y > top + queueRows || x == laneX;
+	}
+
+	// steps from every deck block to target, -1 where it cannot be reached - cached
+	int[] fieldFor(GridBlock target) {
+		return fields.computeIfAbsent(target, this::search);
+	}
+
+	private int[] search(GridBlock target) {
+		int[] distance = new int[width * (bottom - top + 1)];
+		Arrays.fill(distance, -1);
+		int[] queue = new int[distance.length];
+		int head = 0, tail = 0;
+		int start = index(target.getX(), target.getY());
+		distance[start] = 0;
+		queue[tail++] = start;
+		while (head < tail) {
+			int cell = queue[head++];
+			int cx = cell % width;
+			int cy = cell / width + top;
+			for (int d = 0; d < stepX.length; d++) {
+				int nx = cx + stepX[d];
+				int ny = cy + stepY[d];
+				if (!onWalkway(nx, ny, target.getX()))
+					continue;
+				int next = index(nx, ny);
+				if (distance[next] < 0) {
+					distance[next] = distance[cell] + 1;
+					queue[tail++] = next;
+				}
+			}
+		}
+		return distance;
+	}
+
+	private int index(int x, int y) {
+		return (y - top) * width + x;
+	}
+
+	// The next block from current towards a starting block: current if already there or
+	// a teammate ahead has to go first, null if the planner does not cover this move (the
+	// caller moves greedily instead). A free block one step closer if there is one - the
+	// greedy step first - otherwise the greedy step, to wait for
+	public GridBlock nextStep(GridBlock current, int xTarget, int yTarget) {
+		int cx = current.getX();
+		int cy = current.getY();
+		int id = current.owner();
+		if (cx == xTarget && cy == yTarget) {
+			if (id >= 0)
+				progress.set(id, 0);
+			return current;
+		}
+		if (yTarget != top || xTarget < 0 || xTarget >= width || !onWalkway(cx, cy, xTarget) || id < 0)
+			return null;
+		GridBlock step = plan(current, xTarget, yTarget);
+		int[] distance = fieldFor(stadium.whichBlock(xTarget, yTarget));
+		int stepDistance = step.getY() == top ? 0 : distance[index(step.getX(), step.getY())];
+		for (int mate = id - id % teamSize; mate < id; mate++) {
+			int ahead = progress.get(mate); // 0 once they are there, or not walking
+			if (ahead > 0 && stepDistance <= ahead)
+				return current; // would catch them up - let them go first
+		}
+		progress.set(id, stepDistance);
+		return step;
+	}
+
+	private GridBlock plan(GridBlock current, int xTarget, int yTarget) {
+		int cx = current.getX();
+		int cy = current.getY();
+		int[] distance = fieldFor(stadium.whichBlock(xTarget, yTarget));
+		int closer = distance[index(cx, cy)] - 1;
+		int dirX = Integer.signum(xTarget - cx);
+		int dirY = Integer.signum(yTarget - cy);
+		GridBlock greedy = stadium.nextBlock(current, xTarget, yTarget);
+		GridBlock around = null;
+		for (int d = 0; d < stepX.length; d++) {
+			// only ever towards the target on each axis: everyone walking to the blocks then
+			// moves the same way, so nobody can wait on someone who is waiting on them
+			if ((stepX[d] != 0 && stepX[d] != dirX) || (stepY[d] != 0 && stepY[d] != dirY))
+				continue;
+			int nx = cx + stepX[d];
+			int ny = cy + stepY[d];
+			boolean target = nx == xTarget && ny == yTarget;
+			if (!target && (!onWalkway(nx, ny, xTarget) || distance[index(nx, ny)] != closer))
+				continue;
+			GridBlock next = stadium.whichBlock(nx, ny);
+			if (next == greedy && !next.occupied())
+				return greedy;
+			if (around == null && !next.occupied())
+				around = next; // around whoever is on the greedy step
+		}
+		return around != null ? around : greedy;
+	}
+}
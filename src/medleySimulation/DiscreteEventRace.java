@@ -0,0 +1,329 @@
+//Discrete-event version of a race. Instead of a thread per swimmer sleeping in wall-clock
+//time, each swimmer is a small state machine driven by an EventScheduler on a virtual
+//clock, so a race costs only as much CPU as it has moves. It uses the same StadiumGrid
+//geometry, stroke times, speeds, entrance queue, barrier and relay handoff as Swimmer.
+//A race can be reset and run again with another seed, reusing everything it allocated.
+
+package medleySimulation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class DiscreteEventRace {
+
+	private final EventScheduler scheduler = new EventScheduler();
+	private final StadiumGrid stadium;
+	private final FinishCounter finish;
+	private final int numTeams;
+	private final SwimmerProcess[] swimmers;
+	private final PeopleLocation[] locations;
+
+	// things a swimmer can be blocked on, with the swimmers waiting for them
+	private final Map<GridBlock, List<SwimmerProcess>> blockWaiters = new HashMap<>();
+	private final boolean[] waitingToEnter; // per swimmer: arrived, but not their turn yet
+	private final List<SwimmerProcess> barrierWaiters = new ArrayList<>();
+	private final RelayHandoff[] handoffs; // one per team
+	private final boolean[] waitingToDive; // per swimmer: at the block, waiting for the changeover
+	private final int teamSize;
+	private final int[] speeds; // given speeds, or null for random ones
+	private int finished; // swimmers that are done
+	private RaceJournal journal; // null unless the race is being journalled
+
+	DiscreteEventRace(int numTeams, int gridX, int gridY, long seed) throws InterruptedException {
+		this(new SimulationConfig().setNumTeams(numTeams).setGrid(gridX, gridY), seed);
+	}
+
+	// the same config and seed always give the same race - events at the same virtual time
+	// run in the order they were scheduled, and nothing depends on thread timing
+	DiscreteEventRace(SimulationConfig config, long seed) throws InterruptedException {
+		this.numTeams = config.getNumTeams();
+		finish = new FinishCounter(numTeams, this::nowNanos); // virtual ms as nanoseconds
+		stadium = new StadiumGrid(config, finish);
+		teamSize = config.getTeamSize();
+		speeds = config.getSpeeds();
+		int numSwimmers = config.getNumSwimmers();
+		swimmers = new SwimmerProcess[numSwimmers];
+		waitingToEnter = new boolean[numSwimmers];
+		locations = new PeopleLocation[numSwimmers];
+		handoffs = new RelayHandoff[numTeams];
+		waitingToDive = new boolean[numSwimmers];
+
+		SwimStroke[] strokes = SwimStroke.values();
+		for (int team = 0; team < numTeams; team++) {
+			handoffs[team] = new RelayHandoff(teamSize);
+			for (int s = 0; s < teamSize; s++) {
+				int id = team * teamSize + s;
+				locations[id] = new PeopleLocation(id, strokes[s].getColour());
+				locations[id].setSnapshot(stadium.getSnapshot());
+				swimmers[id] = new SwimmerProcess(id, team, strokes[s], locations[id]);
+			}
+		}
+		scheduleArrivals(seed);
+	}
+
+	// speeds and arrival times for a race, as the sleep at the start of Swimmer.run
+	private void scheduleArrivals(long seed) {
+		RaceRandom random = new RaceRandom(seed, swimmers.length, speeds);
+		for (SwimmerProcess swimmer : swimmers) {
+			swimmer.movingSpeed = random.speedFor(swimmer.ID); // drawn as SwimTeam does
+			SplittableRandom stream = random.forSwimmer(swimmer.ID);
+			scheduler.schedule(swimmer.movingSpeed + RaceRandom.nextArrivalJitter(stream), swimmer);
+		}
+	}
+
+	// get ready to run again with another seed - the same race as a new DiscreteEventRace
+	// with that seed would run, without building the stadium, swimmers and queues again
+	public void reset(long seed) {
+		scheduler.reset();
+		stadium.reset();
+		finish.reset();
+		for (RelayHandoff handoff : handoffs)
+			handoff.reset();
+		for (List<SwimmerProcess> waiting : blockWaiters.values())
+			waiting.clear(); // keep the lists for the next race
+		barrierWaiters.clear();
+		Arrays.fill(waitingToEnter, false);
+		Arrays.fill(waitingToDive, false);
+		finished = 0;
+		for (SwimmerProcess swimmer : swimmers) {
+			swimmer.myLocation.reset();
+			swimmer.currentBlock = null;
+			swimmer.door = null;
+			swimmer.phase = Phase.ARRIVE;
+		}
+		scheduleArrivals(seed);
+	}
+
+	// run the race to the end and return the results
+	public FinishCounter run() {
+		scheduler.run();
+		if (finished != swimmers.length)
+			throw new IllegalStateException(
+					"race stalled at t=" + scheduler.now() + " with " + (swimmers.length - finished) + " swimmers blocked");
+		return finish;
+	}
+
+	// virtual time in ms - how long the race would have taken with threads
+	public long elapsed() {
+		return scheduler.now();
+	}
+
+	// virtual time in ns, as a clock for a RaceJournal of this race
+	public long nowNanos() {
+		return scheduler.now() * 1_000_000;
+	}
+
+	// journal the next race, as a threaded race is journalled - null to stop. Set it after
+	// any reset, before run, and close it once run returns
+	public void setJournal(RaceJournal journal) {
+		if (this.journal != null)
+			finish.removeListener(this.journal);
+		this.journal = journal;
+		stadium.setJournal(journal);
+		for (PeopleLocation location : locations)
+			location.setJournal(journal);
+		if (journal != null)
+			finish.addListener(journal);
+	}
+
+	public StadiumGrid getStadium() {
+		return stadium;
+	}
+
+	public PeopleLocation[] getLocations() {
+		return locations;
+	}
+
+	// the steps of Swimmer.run, in order
+	private enum Phase {
+		ARRIVE, ENTERED, WALK, AT_START, DIVE_WAIT, DIVE, SWIM_OUT, SWIM_BACK, EXIT_LANE, EXIT
+	}
+
+	// one swimmer, as a state machine - run() is called whenever its next event is due
+	private final class SwimmerProcess implements Runnable {
+		final int ID;
+		final int team;
+		int movingSpeed; // drawn again for each race
+		final SwimStroke swimStroke;
+		final PeopleLocation myLocation;
+		final GridBlock start;
+		final int leg; // medley order, from the stroke
+		GridBlock currentBlock;
+		GridBlock door; // entrance the swimmer came in by, until they step off it
+		int exitLane; // lane beside the swimmer's own, for leaving the pool
+		long legStart; // when the swimmer was cleared to dive
+		Phase phase = Phase.ARRIVE;
+
+		SwimmerProcess(int ID, int team, SwimStroke stroke, PeopleLocation loc) {
+			this.ID = ID;
+			this.leg = RelayHandoff.legOf(stroke);
+			this.team = team;
+			this.swimStroke = stroke;
+			this.myLocation = loc;
+			this.start = stadium.returnStartingBlock(team);
+		}
+
+		int strokeDelay() {
+			return (int) (movingSpeed * swimStroke.getStrokeTime());
+		}
+
+		@Override
+		public void run() {
+			switch (phase) {
+			case ARRIVE:
+				myLocation.setArrived();
+				try {
+					currentBlock = stadium.tryEnterStadium(myLocation);
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e); // tryEnterStadium never blocks
+				}
+				if (currentBlock == null) {
+					GridBlock entrance = stadium.getGate().tryAdmit(ID);
+					if (entrance != null) // their turn, but someone is standing on the entrance
+						blockWaiters.computeIfAbsent(entrance, b -> new ArrayList<>()).add(this);
+					else
+						waitingToEnter[ID] = true; // woken when their ticket is called
+					return;
+				}
+				door = currentBlock;
+				phase = Phase.ENTERED;
+				scheduler.schedule(200, this); // looking around after entering
+				return;
+			case ENTERED:
+				stadium.inside[ID] = true;
+				phase = Phase.WALK;
+				scheduler.schedule(movingSpeed * 3, this);
+				return;
+			case WALK:
+				if (!move(stadium.nextStep(currentBlock, start.getX(), start.getY())))
+					return;
+				if (door != null && currentBlock != door) {
+					door = null;
+					int next = stadium.leaveEntrance(myLocation); // let the next swimmer in
+					if (next >= 0 && waitingToEnter[next]) {
+						waitingToEnter[next] = false;
+						scheduler.schedule(0, swimmers[next]);
+					}
+				}
+				if (currentBlock == start) {
+					phase = Phase.AT_START;
+					scheduler.schedule(0, this);
+				} else {
+					scheduler.schedule(movingSpeed * 3, this);
+				}
+				return;
+			case AT_START:
+				barrierWaiters.add(this); // the CyclicBarrier with one party per team
+				if (barrierWaiters.size() == numTeams) {
+					for (SwimmerProcess waiter : barrierWaiters) {
+						waiter.phase = Phase.DIVE_WAIT;
+						scheduler.schedule(0, waiter);
+					}
+					barrierWaiters.clear();
+				}
+				return;
+			case DIVE_WAIT:
+				if (!handoffs[team].isTurn(leg)) {
+					waitingToDive[ID] = true; // woken by the previous leg's handoff
+					return;
+				}
+				legStart = finish.now();
+				phase = Phase.DIVE;
+				scheduler.schedule(0, this);
+				return;
+			case DIVE:
+				if (!move(stadium.whichBlock(currentBlock.getX(), currentBlock.getY() - 2)))
+					return;
+				if (journal != null)
+					journal.dive(ID, currentBlock);
+				phase = Phase.SWIM_OUT;
+				scheduler.schedule(0, this);
+				return;
+			case SWIM_OUT:
+				if (currentBlock.getY() == 0) {
+					phase = Phase.SWIM_BACK;
+					scheduler.schedule(0, this);
+					return;
+				}
+				if (move(stadium.nextBlock(currentBlock, currentBlock.getX(), 0)))
+					scheduler.schedule(strokeDelay(), this);
+				return;
+			case SWIM_BACK:
+				if (currentBlock.getY() != stadium.getStartY() - 1) {
+					if (move(stadium.nextBlock(currentBlock, currentBlock.getX(), stadium.getStartY())))
+						scheduler.schedule(strokeDelay(), this);
+					return;
+				}
+				finish.recordSplit(team, swimStroke, finish.now() - legStart);
+				int next = handoffs[team].handOff(leg);
+				if (next < 0) { // last swimmer handles race finish
+					finish.finishRace(ID, team);
+					finished++;
+					return;
+				}
+				if (journal != null)
+					journal.handOff(ID, team, next);
+				int nextID = team * teamSize + next;
+				if (waitingToDive[nextID]) {
+					waitingToDive[nextID] = false;
+					scheduler.schedule(0, swimmers[nextID]);
+				}
+				exitLane = currentBlock.getX() + 1;
+				phase = Phase.EXIT_LANE;
+				scheduler.schedule(0, this);
+				return;
+			case EXIT_LANE:
+				if (!move(stadium.nextBlock(currentBlock, exitLane, currentBlock.getY())))
+					return;
+				phase = Phase.EXIT;
+				scheduler.schedule(0, this);
+				return;
+			case EXIT:
+				int bench = stadium.getMaxY() - swimStroke.getOrder();
+				if (currentBlock.getY() == bench) {
+					finished++;
+					return;
+				}
+				if (move(stadium.nextBlock(currentBlock, exitLane, bench)))
+					scheduler.schedule(movingSpeed * 3, this);
+				return;
+			}
+		}
+
+		// claim newBlock and release the current one, or wait for newBlock to be released
+		// and run the same phase again - false if the swimmer is now waiting
+		boolean move(GridBlock newBlock) {
+			if (newBlock == currentBlock)
+				return true;
+			try {
+				if (!newBlock.get(ID)) {
+					blockWaiters.computeIfAbsent(newBlock, b -> new ArrayList<>()).add(this);
+					return false;
+				}
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e); // get() never blocks
+			}
+			myLocation.setLocation(newBlock);
+			GridBlock old = currentBlock;
+			currentBlock = newBlock;
+			old.release();
+			List<SwimmerProcess> waiting = blockWaiters.get(old); // lists are kept and reused
+			if (waiting != null && !waiting.isEmpty())
+				wakeAll(waiting);
+			return true;
+		}
+	}
+
+	// wake every waiter - they all retry, the first one scheduled wins
+	private void wakeAll(List<SwimmerProcess> waiters) {
+		for (SwimmerProcess waiter : waiters)
+			scheduler.schedule(0, waiter);
+		waiters.clear();
+	}
+}
@@ -0,0 +1,83 @@
+//Priority-queue event scheduler on a virtual clock, used by the discrete-event engine.
+//Events due at the same time run in the order they were scheduled, so a run is repeatable.
+//Spent events are kept on a free list and reused, so a long run - or many races on one
+//scheduler - does not allocate an Event per step.
+
+package medleySimulation;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+public class EventScheduler {
+
+	// an action due at a point in virtual time
+	private static final class Event implements Comparable<Event> {
+		long time;
+		long seq; // tie-breaker: scheduling order
+		Runnable action;
+
+		@Override
+		public int compareTo(Event other) {
+			if (time != other.time)
+				return Long.compare(time, other.time);
+			return Long.compare(seq, other.seq);
+		}
+	}
+
+	private final PriorityQueue<Event> queue = new PriorityQueue<>();
+	private final ArrayDeque<Event> free = new ArrayDeque<>(); // run events, to be reused
+	private long now; // virtual time, in the same units the swimmers sleep for (ms)
+	private long nextSeq;
+
+	// current virtual time
+	public long now() {
+		return now;
+	}
+
+	// run the action delay time units from now
+	public void schedule(long delay, Runnable action) {
+		if (delay < 0)
+			throw new IllegalArgumentException("cannot schedule in the past: " + delay);
+		Event event = free.poll();
+		if (event == null)
+			event = new Event();
+		event.time = now + delay;
+		event.seq = nextSeq++;
+		event.action = action;
+		queue.add(event);
+	}
+
+	// run the next event, advancing the clock - false if nothing is left to run
+	public boolean step() {
+		Event next = queue.poll();
+		if (next == null)
+			return false;
+		now = next.time;
+		Runnable action = next.action;
+		next.action = null;
+		free.add(next); // free before running, the action may schedule the next one
+		action.run();
+		return true;
+	}
+
+	// run events until there are none left
+	public void run() {
+		while (step()) {
+		}
+	}
+
+	// number of events waiting to run
+	public int pending() {
+		return queue.size();
+	}
+
+	// drop anything still queued and start the clock again from 0
+	public void reset() {
+		for (Event event; (event = queue.poll()) != null;) {
+			event.action = null;
+			free.add(event);
+		}
+		now = 0;
+		nextSeq = 0;
+	}
+}
@@ -0,0 +1,45 @@
+//How swimmer lifecycles are run - a platform thread per swimmer (per swimmer and team
+//in the GUI, as originally), a virtual thread per swimmer, tasks on an Executor supplied by the caller,
+//or no threads at all on the virtual clock of a DiscreteEventRace.
+
+package medleySimulation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public enum ExecutionMode {
+	// a platform thread per swimmer: headless, each swimmer's run is a task on a new thread
+	// of its own (a cached pool in Tournament); the GUI starts SwimTeam and Swimmer threads
+	PLATFORM,
+	VIRTUAL, // one virtual thread per swimmer, teams need no thread at all
+	EXECUTOR, // swimmers are tasks on a caller supplied Executor
+	EVENT; // discrete-event simulation on one thread, in virtual time
+
+	// parse a mode name from the command line, ignoring case
+	public static ExecutionMode parse(String name) {
+		return valueOf(name.trim().toUpperCase());
+	}
+
+	// are virtual threads available in this JVM (Java 21 or later)?
+	public static boolean virtualThreadsSupported() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	// an executor that starts a new virtual thread per task. Looked up reflectively so
+	// the simulation still compiles and runs (in the other modes) on older JDKs
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			throw new UnsupportedOperationException("virtual threads need Java 21 or later");
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("could not create virtual thread executor", e);
+		}
+	}
+}
@@ -3,39 +3,148 @@
 
 package medleySimulation;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+// Records every team's finishing position, finish time and leg splits.
+// Finishers claim a position with one atomic increment and write into preallocated
+// arrays, so they never wait on each other or on readers.
 public class FinishCounter {
-    private boolean firstAcrossLine; // Flag to track if 1st place has been taken
-    private int winner; // ID of the swimmer who finished in 1st place
-    private int winningTeam; // ID of the team of the swimmer who finished in 1st place
+    static final int defaultTeams = 10;
+
+    private final LongSupplier clock; // nanoseconds - wall clock, or virtual time in the event engine
+    private volatile long raceStart; // clock value when the race started
+
+    private final AtomicInteger nextPosition = new AtomicInteger(); // next free place, 0 based
+    private final AtomicIntegerArray placedTeam; // team in each place, -1 until the place is published
+    private final int[] placedSwimmer; // swimmer who touched for each place
+    private final long[] finishTime; // finish time for each place, nanoseconds after raceStart
+    private final AtomicLongArray legSplits; // split per team and stroke, -1 until swum
+    private final List<FinishListener> listeners = new CopyOnWriteArrayList<>(); // told about each finish
 
     // Constructor to initialize race status and results
     public FinishCounter() {
-        firstAcrossLine = true; // Initial status: no swimmer has finished 1st yet
-        winner = -1; // No swimmer has won yet
-        winningTeam = -1; // No team has won yet
+        this(defaultTeams);
+    }
+
+    public FinishCounter(int nTeams) {
+        this(nTeams, System::nanoTime);
+    }
+
+    public FinishCounter(int nTeams, LongSupplier clock) {
+        this.clock = clock;
+        placedTeam = new AtomicIntegerArray(nTeams);
+        placedSwimmer = new int[nTeams];
+        finishTime = new long[nTeams];
+        legSplits = new AtomicLongArray(nTeams * SwimTeam.sizeOfTeam);
+        reset();
     }
 
-    // This method is called by a swimmer when they finish the race in 1st place
-    public synchronized void finishRace(int swimmer, int team) {
-        if (firstAcrossLine) {
-            firstAcrossLine = false;
-            winner = swimmer;
-            winningTeam = team;
+    // Clear every place and split for the next race - listeners stay subscribed.
+    // Only between races, when nobody is finishing
+    public void reset() {
+        for (int i = 0; i < placedTeam.length(); i++)
+            placedTeam.set(i, -1); // no team has finished yet
+        for (int i = 0; i < legSplits.length(); i++)
+            legSplits.set(i, -1);
+        nextPosition.set(0);
+        raceStart = clock.getAsLong();
+    }
+
+    // Mark the start of the race - finish times are measured from here
+    public void startRace() {
+        raceStart = clock.getAsLong();
+    }
+
+    // current time on this counter's clock, for timing legs
+    public long now() {
+        return clock.getAsLong();
+    }
+
+    // Called by the last swimmer of a team when they touch - returns the place, 1 based
+    public int finishRace(int swimmer, int team) {
+        int position = nextPosition.getAndIncrement();
+        if (position >= placedSwimmer.length)
+            return position + 1; // more finishers than teams - nothing to record it in
+        placedSwimmer[position] = swimmer;
+        finishTime[position] = clock.getAsLong() - raceStart;
+        placedTeam.set(position, team); // volatile write publishes the swimmer and time above
+        if (!listeners.isEmpty()) {
+            RacePlacing placing = placingAt(position, team);
+            for (FinishListener listener : listeners)
+                listener.placingRecorded(placing);
         }
+        return position + 1;
+    }
+
+    // Be told about every finish from now on
+    public void addListener(FinishListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(FinishListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Called by each swimmer when they finish their leg
+    public void recordSplit(int team, SwimStroke stroke, long splitNanos) {
+        legSplits.set(team * SwimTeam.sizeOfTeam + stroke.getOrder() - 1, splitNanos);
     }
 
     // Method to check if the race has been won (i.e., if 1st place is taken)
     public boolean isRaceWon() {
-        return !firstAcrossLine;
+        return placedTeam.get(0) >= 0;
     }
 
     // Getter for the ID of the swimmer who finished 1st
     public int getWinner() {
-        return winner;
+        return isRaceWon() ? placedSwimmer[0] : -1;
     }
 
     // Getter for the ID of the winning team for 1st place
     public int getWinningTeam() {
-        return winningTeam;
+        return placedTeam.get(0);
+    }
+
+    // Number of places that can be read with getPlacings()
+    public int getPlacingCount() {
+        int count = 0;
+        while (count < placedSwimmer.length && placedTeam.get(count) >= 0)
+            count++;
+        return count;
+    }
+
+    // Consistent snapshot of the placings so far, safe to call while the race is running.
+    // Only the unbroken run of published places from 1st down is returned, so a reader
+    // never sees 3rd place before 2nd has been written
+    public List<RacePlacing> getPlacings() {
+        List<RacePlacing> placings = new ArrayList<>();
+        for (int position = 0; position < placedSwimmer.length; position++) {
+            int team = placedTeam.get(position);
+            if (team < 0)
+                break;
+            placings.add(placingAt(position, team));
+        }
+        return placings;
+    }
+
+    // the record for a published position
+    private RacePlacing placingAt(int position, int team) {
+        long[] splits = new long[SwimTeam.sizeOfTeam];
+        for (int leg = 0; leg < splits.length; leg++)
+            splits[leg] = legSplits.get(team * SwimTeam.sizeOfTeam + leg);
+        return new RacePlacing(position + 1, team, placedSwimmer[position], finishTime[position], splits);
+    }
+
+    // Split for one team's leg, -1 if that leg has not been swum yet
+    public long getSplit(int team, SwimStroke stroke) {
+        return legSplits.get(team * SwimTeam.sizeOfTeam + stroke.getOrder() - 1);
     }
 }
@@ -0,0 +1,9 @@
+//Callback for anything that wants to hear about results as they happen, instead of
+//polling a FinishCounter
+
+package medleySimulation;
+
+public interface FinishListener {
+	// a team has finished - called on the finishing swimmer's thread, so keep it short
+	void placingRecorded(RacePlacing placing);
+}
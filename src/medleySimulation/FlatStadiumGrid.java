@@ -0,0 +1,270 @@
+//The stadium grid with no GridBlock objects: a block is an int index, x * height + y, and
+//its owner is one slot of an AtomicIntegerArray - so a 10,000 x 10,000 grid is one 400MB
+//array instead of a hundred million objects, and a swimmer going up and down a lane walks
+//along consecutive slots. Same geometry and the same moveTowards/jumpTo/whichBlock moves
+//as StadiumGrid, with blocks as indexes and -1 for "no block".
+//It is also the storage behind a StadiumGrid with backend=flat: swimmers and the event
+//engine still move GridBlocks, so they are handed Blocks - views of one slot of the owner
+//array, made the first time anyone looks at that block and kept so each block has one view.
+//Only blocks someone has walked on ever become objects.
+//Waiters park on one of a fixed set of lock stripes chosen by the block index, since a
+//lock per block would bring the objects back; a release only wakes its own stripe.
+
+package medleySimulation;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class FlatStadiumGrid {
+	static final int stripes = 256; // parking locks - a power of two
+
+	private final int x; // maximum x value
+	private final int y; // maximum y value
+	private final int laneSpacing; // starting blocks are at x % laneSpacing == 1
+	private final int start_y; // where the starting blocks are
+	private final int numTeams; // one starting block per team
+	private final AtomicIntegerArray owners; // ID of each block's owner, -1 if free
+	private final AtomicIntegerArray waiters = new AtomicIntegerArray(stripes); // threads parked per stripe
+	private final ReentrantLock[] locks = new ReentrantLock[stripes];
+	private final Condition[] freed = new Condition[stripes];
+	private final ConcurrentHashMap<Integer, Block> views = new ConcurrentHashMap<>(); // by index
+
+	// a GridBlock whose owner is a slot of the owner array. It parks waiters on its own lock,
+	// as any GridBlock does - there is only ever one view of a block to park on
+	static final class Block extends GridBlock {
+		private final FlatStadiumGrid grid;
+		private final int index;
+
+		Block(FlatStadiumGrid grid, int index) {
+			super(grid.getX(index), grid.getY(index), grid.isStart(index));
+			this.grid = grid;
+			this.index = index;
+		}
+
+		@Override
+		public int owner() {
+			return grid.owner(index);
+		}
+
+		@Override
+		boolean claim(int threadID) {
+			return grid.owners.compareAndSet(index, -1, threadID);
+		}
+
+		@Override
+		void free() {
+			grid.release(index);
+		}
+	}
+
+	FlatStadiumGrid(int x, int y, int nTeams) {
+		this(new SimulationConfig().setNumTeams(nTeams).setGrid(x, y));
+	}
+
+	FlatStadiumGrid(SimulationConfig config) {
+		config.validate();
+		this.x = config.getGridX();
+		this.y = config.getGridY();
+		if ((long) x * y > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("grid too big for one array: " + x + "x" + y);
+		laneSpacing = config.getLaneSpacing();
+		start_y = y - 20; // start row hard-coded, as in StadiumGrid
+		numTeams = config.getNumTeams();
+		owners = new AtomicIntegerArray(x * y);
+		for (int s = 0; s < stripes; s++) {
+			locks[s] = new ReentrantLock();
+			freed[s] = locks[s].newCondition();
+		}
+		reset();
+	}
+
+	// every block free - only between races, when nobody is waiting
+	public void reset() {
+		for (int i = 0; i < owners.length(); i++)
+			owners.set(i, -1);
+		for (Block view : views.values())
+			view.reset();
+	}
+
+	// the one GridBlock view of a block, made on first use - no checking
+	public GridBlock block(int xPos, int yPos) {
+		int index = index(xPos, yPos);
+		Block view = views.get(index);
+		if (view == null)
+			view = views.computeIfAbsent(index, i -> new Block(this, i));
+		return view;
+	}
+
+	// getters
+	public int getMaxX() {
+		return x;
+	}
+
+	public int getMaxY() {
+		return y;
+	}
+
+	public int getStartY() {
+		return start_y;
+	}
+
+	public int getLaneSpacing() {
+		return laneSpacing;
+	}
+
+	// index of a block, with no checking
+	public int index(int xPos, int yPos) {
+		return xPos * y + yPos;
+	}
+
+	public int getX(int block) {
+		return block / y;
+	}
+
+	public int getY(int block) {
+		return block % y;
+	}
+
+	// is this a valid grid reference?
+	public boolean inGrid(int i, int j) {
+		if ((i >= x) || (j >= y) || (i < 0) || (j < 0))
+			return false;
+		return true;
+	}
+
+	// the block at a position, -1 if it is off the grid
+	public int whichBlock(int xPos, int yPos) {
+		if (inGrid(xPos, yPos))
+			return index(xPos, yPos);
+		RaceLog.warn(RaceLog.Event.BLOCK_NOT_FOUND, -1, xPos, yPos);
+		return -1;
+	}
+
+	// starting block for a team (the lane)
+	public int returnStartingBlock(int team) {
+		return index(team * laneSpacing + 1, start_y);
+	}
+
+	public boolean isStart(int block) {
+		int i = getX(block);
+		return getY(block) == start_y && i % laneSpacing == 1 && i / laneSpacing < numTeams;
+	}
+
+	// ID of the block's owner, -1 if free
+	public int owner(int block) {
+		return owners.get(block);
+	}
+
+	public boolean occupied(int block) {
+		return owners.get(block) != -1;
+	}
+
+	// claim a block - compare-and-set, as GridBlock.get
+	public boolean get(int block, int threadID) {
+		int owner = owners.get(block);
+		if (owner == threadID)
+			return true; // already in this block
+		if (owner >= 0)
+			return false; // space is occupied
+		return owners.compareAndSet(block, -1, threadID);
+	}
+
+	// claim a block, parking on its stripe until it is free
+	public void acquire(int block, int threadID) throws InterruptedException {
+		for (int spins = GridBlock.spinLimit; spins > 0; spins--) {
+			if (get(block, threadID))
+				return;
+			Thread.onSpinWait();
+		}
+		if (get(block, threadID))
+			return;
+		int stripe = block & (stripes - 1);
+		waiters.incrementAndGet(stripe); // must be visible before we re-check, see release()
+		try {
+			locks[stripe].lockInterruptibly();
+			try {
+				boolean got = get(block, threadID);
+				while (!got) {
+					freed[stripe].await();
+					got = get(block, threadID);
+					if (RaceMetrics.enabled)
+						RaceMetrics.wokeUp(got); // a stripe is shared, so some wake-ups are for other blocks
+				}
+			} finally {
+				locks[stripe].unlock();
+			}
+		} finally {
+			waiters.decrementAndGet(stripe);
+		}
+	}
+
+	// free a block - the stripe lock is only taken if someone is parked on it
+	public void release(int block) {
+		owners.set(block, -1);
+		int stripe = block & (stripes - 1);
+		if (waiters.get(stripe) > 0) {
+			locks[stripe].lock();
+			try {
+				freed[stripe].signalAll();
+			} finally {
+				locks[stripe].unlock();
+			}
+		}
+	}
+
+	// the block a one block move in a direction would go to - current if not moving or
+	// the move is invalid. x first, then diagonal or y, as StadiumGrid.nextBlock
+	public int nextBlock(int current, int xDir, int yDir) {
+		int c_x = getX(current);
+		int c_y = getY(current);
+
+		int add_x = Integer.signum(xDir - c_x);// -1,0 or 1
+		int add_y = Integer.signum(yDir - c_y);// -1,0 or 1
+
+		if ((add_x == 0) && (add_y == 0)) // not actually moving
+			return current;
+		if (!inGrid(add_x + c_x, add_y + c_y)) {
+			RaceLog.warn(RaceLog.Event.INVALID_MOVE, owner(current), add_x + c_x, add_y + c_y);
+			return current;
+		}
+		if (add_x != 0)
+			return index(add_x + c_x, c_y); // try moving x only first
+		return index(c_x, add_y + c_y);
+	}
+
+	// Make a one block move in a direction - waits until the block is free
+	public int moveTowards(int current, int xDir, int yDir, int threadID) throws InterruptedException {
+		int next = nextBlock(current, xDir, yDir);
+		if (next == current)
+			return current;
+		return moveTo(current, next, threadID, RaceMetrics.moveTowardsWait);
+	}
+
+	// levitate to a specific block
+	public int jumpTo(int current, int xPos, int yPos, int threadID) throws InterruptedException {
+		if (!inGrid(xPos, yPos)) {
+			RaceLog.warn(RaceLog.Event.INVALID_MOVE, threadID, xPos, yPos);
+			return current;
+		}
+		int next = index(xPos, yPos);
+		if (next == current)
+			return current;
+		return moveTo(current, next, threadID, RaceMetrics.jumpToWait);
+	}
+
+	// claim next, then give up current - only one block is waited on at a time
+	private int moveTo(int current, int next, int threadID, LatencyHistogram waitTime) throws InterruptedException {
+		boolean timed = RaceMetrics.enabled;
+		long waitStart = timed && !get(next, threadID) ? System.nanoTime() : 0;
+		acquire(next, threadID); // returns at once if the get above won it
+		if (timed)
+			RaceMetrics.moved(); // only once the block is ours - an interrupted wait is no move
+		if (waitStart != 0)
+			waitTime.record(System.nanoTime() - waitStart);
+		if (current >= 0)
+			release(current);
+		return next;
+	}
+}
@@ -5,49 +5,166 @@
 
 package medleySimulation;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 public class GridBlock {
 
-	private int isOccupied;
+	// how many times acquire() retries before parking - 0 parks straight away
+	public static volatile int spinLimit = 0;
+
+	private final AtomicInteger isOccupied; // ID of the owning thread, -1 if free
+	private final AtomicInteger waiters = new AtomicInteger(); // threads parked in acquire()
+	// parking uses a lock rather than this block's monitor: waiting on a monitor pins a
+	// virtual thread to its carrier
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition freed = lock.newCondition();
+	private final ConcurrentLinkedQueue<Runnable> whenFree = new ConcurrentLinkedQueue<>(); // run on the next release
 
+	private long claimedAt; // when the owner claimed it, for RaceMetrics - owner only
 	private final boolean isStart; // is this a starting block?
-	private int[] coords; // the coordinate of the block.
+	private final int x; // the coordinate of the block - plain fields, no array to chase
+	private final int y;
 
 	GridBlock(boolean startBlock) throws InterruptedException {
-		isStart = startBlock;
-		isOccupied = -1;
+		this(-1, -1, startBlock);
 	}
 
-	GridBlock(int x, int y, boolean startBlock) throws InterruptedException {
-		this(startBlock);
-		coords = new int[] { x, y };
+	GridBlock(int x, int y, boolean startBlock) {
+		isStart = startBlock;
+		isOccupied = new AtomicInteger(-1);
+		this.x = x;
+		this.y = y;
 	}
 
 	public int getX() {
-		return coords[0];
+		return x;
 	}
 
 	public int getY() {
-		return coords[1];
+		return y;
+	}
+
+	// free the block for the next race - only between races, when nobody is waiting on it
+	void reset() {
+		free();
+		claimedAt = 0;
+		whenFree.clear();
 	}
 
-	// Get a block
+	// Get a block - compare-and-set, so only one thread can ever win a free block
 	public boolean get(int threadID) throws InterruptedException {
-		if (isOccupied == threadID)
+		int owner = owner();
+		if (owner == threadID)
 			return true; // thread Already in this block
-		if (isOccupied >= 0)
+		if (owner >= 0)
 			return false; // space is occupied
-		isOccupied = threadID; // set ID to thread that had block
+		if (!claim(threadID))
+			return false; // lost the race if someone else got it first
+		if (RaceMetrics.enabled)
+			claimedAt = System.nanoTime();
 		return true;
 	}
 
-	// release a block
+	// Get a block, spinning up to spinLimit times and then parking on this block
+	// until it is free
+	public void acquire(int threadID) throws InterruptedException {
+		acquire(threadID, -1);
+	}
+
+	// Get a block, waiting at most timeoutNanos for it - negative waits for ever, 0 does
+	// not wait at all. False if it timed out
+	public boolean acquire(int threadID, long timeoutNanos) throws InterruptedException {
+		if (timeoutNanos == 0)
+			return get(threadID);
+		for (int spins = spinLimit; spins > 0; spins--) {
+			if (get(threadID))
+				return true;
+			Thread.onSpinWait();
+		}
+		if (get(threadID))
+			return true;
+		long remaining = timeoutNanos;
+		waiters.incrementAndGet(); // must be visible before we re-check, see release()
+		try {
+			lock.lockInterruptibly();
+			try {
+				boolean got = get(threadID);
+				while (!got) {
+					if (timeoutNanos < 0) {
+						freed.await();
+					} else {
+						if (remaining <= 0)
+							return false;
+						remaining = freed.awaitNanos(remaining);
+					}
+					got = get(threadID);
+					if (RaceMetrics.enabled)
+						RaceMetrics.wokeUp(got); // signalAll wakes everyone, only one can win
+				}
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	// Run task once the block is next free - straight away if it is free now. Tasks run
+	// on the releasing thread, so they must be quick: hand any real work to an executor.
+	// A task can run more than once for one call, and must cope with losing the block
+	public void whenFree(Runnable task) {
+		whenFree.add(task);
+		if (!occupied())
+			runWhenFree(); // it was freed before the task was queued
+	}
+
+	private void runWhenFree() {
+		for (Runnable task; (task = whenFree.poll()) != null;)
+			task.run();
+	}
+
+	// release a block - only threads waiting for this block are woken, and the
+	// lock is not touched at all if nobody is waiting
 	public void release() {
-		isOccupied = -1;
+		if (RaceMetrics.enabled && claimedAt != 0) {
+			RaceMetrics.blockOccupancy.record(System.nanoTime() - claimedAt);
+			claimedAt = 0; // before the block is free - the next owner sets its own
+		}
+		free();
+		if (waiters.get() > 0) {
+			lock.lock();
+			try {
+				freed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+		if (!whenFree.isEmpty())
+			runWhenFree();
+	}
+
+	// ID of the thread that owns this block, -1 if free
+	public int owner() {
+		return isOccupied.get();
+	}
+
+	// where the owner is kept - overridden by blocks whose owner lives elsewhere, see
+	// FlatStadiumGrid.Block. Take a free block for threadID, false if it is not free
+	boolean claim(int threadID) {
+		return isOccupied.compareAndSet(-1, threadID);
+	}
+
+	void free() {
+		isOccupied.set(-1);
 	}
 
 	// is a bloc already occupied?
 	public boolean occupied() {
-		if (isOccupied == -1)
+		if (owner() == -1)
 			return false;
 		return true;
 	}
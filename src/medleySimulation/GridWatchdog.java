@@ -0,0 +1,250 @@
+//Watches a StadiumGrid for swimmers stuck waiting for blocks, so a hang costs seconds
+//instead of a killed JVM. Every move that has to wait registers the block it wants, and
+//every move stamps the time; a checker thread follows "waits for the owner of" edges from
+//each waiter. A cycle is a deadlock - nobody in it can ever move again. A waiter that has
+//not moved for the threshold, at the end of a chain of waiters whose last owner has not
+//moved either and is not on a starting block (people wait there for their leg), is stalled.
+//A cycle only counts once the same one, with nobody in it having moved, is seen on two
+//checks in a row, since each check reads owners and waits one at a time while people move.
+//Both are logged through RaceLog; with Action.YIELD one swimmer in each deadlock whose wait
+//can give way is also told to step aside onto a free neighbouring block, which frees its
+//block for the others. The request is dropped when they move or the cycle is gone.
+
+package medleySimulation;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class GridWatchdog {
+	public enum Action {
+		OFF, // no watchdog
+		REPORT, // log deadlocks and stalls
+		YIELD; // log them, and make one swimmer in each deadlock step aside
+
+		public static Action parse(String name) {
+			return valueOf(name.trim().toUpperCase());
+		}
+	}
+
+	// one checker thread for every watched grid
+	private static final ScheduledExecutorService checker = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "GridWatchdog");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final StadiumGrid stadium;
+	private final Action action;
+	private final long thresholdNanos; // no move for this long counts as stalled
+	private final AtomicReferenceArray<GridBlock> waitingFor; // per swimmer, null if not waiting
+	private final AtomicLongArray lastMove; // per swimmer, nanoTime of their last move
+	private final AtomicIntegerArray stepAside; // per swimmer, 1 when told to yield
+	private final AtomicIntegerArray canYield; // per swimmer, 1 if their wait may step aside
+	private final long[] reported; // per swimmer, lastMove when last reported - checker only
+	private final int[] lastNext; // per swimmer, who they waited for at the last check - checker only
+	private final long[] lastSeen; // per swimmer, lastMove at the last check - checker only
+	private final LongAdder deadlocks = new LongAdder();
+	private final LongAdder stalls = new LongAdder();
+	private final LongAdder yields = new LongAdder();
+	private ScheduledFuture<?> task;
+
+	GridWatchdog(StadiumGrid stadium, int people, Action action, long thresholdMs) {
+		this.stadium = stadium;
+		this.action = action;
+		thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+		waitingFor = new AtomicReferenceArray<>(people);
+		lastMove = new AtomicLongArray(people);
+		stepAside = new AtomicIntegerArray(people);
+		canYield = new AtomicIntegerArray(people);
+		reported = new long[people];
+		lastNext = new int[people];
+		lastSeen = new long[people];
+		reset();
+	}
+
+	// check every half threshold until stopped
+	public synchronized void start() {
+		if (task == null) {
+			long period = Math.max(TimeUnit.NANOSECONDS.toMillis(thresholdNanos) / 2, 10);
+			task = checker.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public synchronized void stop() {
+		if (task != null) {
+			task.cancel(false);
+			task = null;
+		}
+	}
+
+	// everyone has just moved and nobody is waiting - at the start of each race
+	public void reset() {
+		long now = System.nanoTime();
+		for (int i = 0; i < lastMove.length(); i++) {
+			waitingFor.set(i, null);
+			lastMove.set(i, now);
+			stepAside.set(i, 0);
+			canYield.set(i, 0);
+		}
+		Arrays.fill(reported, 0);
+		Arrays.fill(lastNext, -1);
+		Arrays.fill(lastSeen, 0);
+	}
+
+	// hooks, from StadiumGrid. A swimmer starts waiting for block - null when they stop -
+	// and says whether this wait can step aside to break a deadlock
+	void waiting(int id, GridBlock block, boolean mayStepAside) {
+		canYield.set(id, mayStepAside ? 1 : 0);
+		waitingFor.set(id, block);
+		if (block == null)
+			stepAside.set(id, 0);
+	}
+
+	void moved(int id) {
+		lastMove.set(id, System.nanoTime());
+		stepAside.set(id, 0); // they are not stuck any more
+	}
+
+	// has the watchdog asked this swimmer to step aside? Clears the request
+	boolean shouldStepAside(int id) {
+		return stepAside.getAndSet(id, 0) == 1;
+	}
+
+	// how long a watched wait blocks before looking for a request to step aside
+	long sliceNanos() {
+		return Math.max(thresholdNanos / 4, TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	public long getDeadlocks() {
+		return deadlocks.sum();
+	}
+
+	public long getStalls() {
+		return stalls.sum();
+	}
+
+	public long getYields() {
+		return yields.sum();
+	}
+
+	// count a swimmer stepping aside
+	void yielded() {
+		yields.increment();
+	}
+
+	// one pass over the wait-for graph. Each waiter waits for exactly one owner, so the
+	// graph is a set of chains, some ending in a cycle
+	void check() {
+		int n = waitingFor.length();
+		int[] next = new int[n]; // owner each swimmer waits for, -1 if none
+		GridBlock[] wanted = new GridBlock[n];
+		for (int i = 0; i < n; i++) {
+			next[i] = -1;
+			GridBlock block = waitingFor.get(i);
+			if (block == null)
+				continue;
+			int owner = block.owner();
+			if (owner >= 0 && owner != i && owner < n) {
+				next[i] = owner;
+				wanted[i] = block;
+			}
+		}
+
+		byte[] state = new byte[n]; // 0 not seen, 1 on the current chain, 2 done
+		boolean[] inCycle = new boolean[n];
+		boolean[] victim = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			if (state[i] != 0 || next[i] < 0)
+				continue;
+			int j = i;
+			while (j >= 0 && state[j] == 0) {
+				state[j] = 1;
+				j = next[j];
+			}
+			if (j >= 0 && state[j] == 1)
+				deadlock(j, next, inCycle, victim);
+			for (j = i; j >= 0 && state[j] == 1; j = next[j])
+				state[j] = 2;
+		}
+		for (int i = 0; i < n; i++) {
+			if (!victim[i])
+				stepAside.set(i, 0); // no deadlock for them to break any more
+		}
+
+		long now = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			if (next[i] < 0 || inCycle[i] || now - lastMove.get(i) < thresholdNanos)
+				continue;
+			int end = i;
+			GridBlock endBlock = wanted[i];
+			for (int steps = 0; next[end] >= 0 && steps < n; steps++) {
+				endBlock = wanted[end];
+				end = next[end];
+			}
+			if (inCycle[end] || endBlock.isStart() || now - lastMove.get(end) < thresholdNanos)
+				continue; // behind a deadlock already reported, waiting for a leg, or still moving
+			if (reported[i] == lastMove.get(i))
+				continue; // already reported, and not moved since
+			reported[i] = lastMove.get(i);
+			stalls.increment();
+			RaceLog.warn(RaceLog.Event.STALLED, i, wanted[i].getX(), wanted[i].getY());
+		}
+		for (int i = 0; i < n; i++) {
+			lastNext[i] = next[i];
+			lastSeen[i] = lastMove.get(i);
+		}
+	}
+
+	// the cycle through first. Once the last check saw it too, log it once and pick the
+	// highest ID whose wait can step aside, if anyone's can
+	private void deadlock(int first, int[] next, boolean[] inCycle, boolean[] victims) {
+		int length = 0;
+		int highest = first;
+		int victim = -1;
+		boolean confirmed = true; // same edges, and nobody moved, since the last check
+		int j = first;
+		do {
+			inCycle[j] = true;
+			length++;
+			highest = Math.max(highest, j);
+			if (canYield.get(j) == 1)
+				victim = Math.max(victim, j);
+			if (lastNext[j] != next[j] || lastSeen[j] != lastMove.get(j))
+				confirmed = false;
+			j = next[j];
+		} while (j != first);
+		if (!confirmed)
+			return;
+		boolean fresh = false; // someone in it has moved since it was last reported
+		j = first;
+		do {
+			if (reported[j] != lastMove.get(j)) {
+				reported[j] = lastMove.get(j);
+				fresh = true;
+			}
+			j = next[j];
+		} while (j != first);
+		if (fresh) {
+			deadlocks.increment();
+			int who = victim >= 0 ? victim : highest;
+			RaceLog.warn(RaceLog.Event.DEADLOCK, who, next[who], length);
+		}
+		if (action == Action.YIELD && victim >= 0) {
+			victims[victim] = true;
+			stepAside.set(victim, 1);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "watchdog=" + action + " deadlocks=" + getDeadlocks() + " stalls=" + getStalls() + " yields="
+				+ getYields();
+	}
+}
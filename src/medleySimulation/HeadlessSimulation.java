@@ -0,0 +1,182 @@
+//Headless entry point - runs races with no Swing, no CounterDisplay and no sound,
+//so races can be scripted and timed on servers without a display.
+
+package medleySimulation;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class HeadlessSimulation {
+
+	// A race with threads, built once and reset for every race after the first - the
+	// stadium, teams, swimmers and finish counter are reused, so back to back races
+	// make next to no garbage. Swimmers run as tasks on an executor
+	static final class ThreadedRace {
+		private final SimulationConfig config;
+		private final FinishCounter finishLine;
+		private final StadiumGrid stadiumGrid;
+		private final PeopleLocation[] peopleLocations;
+		private final SwimTeam[] teams;
+		private boolean raced; // the teams have swum once, so reset them before the next race
+
+		ThreadedRace(SimulationConfig config, long seed) throws InterruptedException {
+			this.config = config;
+			int numTeams = config.getNumTeams();
+			finishLine = new FinishCounter(numTeams);
+			stadiumGrid = new StadiumGrid(config, finishLine);
+			peopleLocations = new PeopleLocation[config.getNumSwimmers()];
+			teams = new SwimTeam[numTeams];
+			RaceRandom random = new RaceRandom(seed, peopleLocations.length, config.getSpeeds());
+			for (int i = 0; i < numTeams; i++) {
+				// the grid's barrier, so resetting the grid also repairs it if a race broke it
+				teams[i] = new SwimTeam(stadiumGrid, i, config.getTeamSize(), finishLine, peopleLocations,
+						stadiumGrid.racebarrier, random);
+			}
+		}
+
+		// Run one race to completion and return the finish counter holding the result, which
+		// is only good until the next race. The race is journalled to journalFile unless it is null
+		FinishCounter run(long seed, Executor executor, Path journalFile) throws InterruptedException, IOException {
+			RaceJournal journal = journalFile == null ? null : new RaceJournal(journalFile, config);
+			stadiumGrid.setJournal(journal);
+			for (PeopleLocation location : peopleLocations)
+				location.setJournal(journal);
+			if (journal != null)
+				finishLine.addListener(journal);
+			if (raced) {
+				stadiumGrid.reset();
+				finishLine.reset();
+				RaceRandom random = new RaceRandom(seed, peopleLocations.length, config.getSpeeds());
+				for (SwimTeam team : teams)
+					team.reset(random);
+			}
+			raced = true;
+
+			// no start button - the race starts straight away
+			GridWatchdog watchdog = stadiumGrid.getWatchdog();
+			if (watchdog != null)
+				watchdog.start();
+			finishLine.startRace();
+			for (SwimTeam team : teams)
+				team.startOn(executor);
+			for (SwimTeam team : teams)
+				team.awaitSwimmers();
+			if (watchdog != null)
+				watchdog.stop();
+			if (journal != null) {
+				finishLine.removeListener(journal);
+				journal.close(); // everyone has finished - nothing more will be appended
+			}
+			return finishLine;
+		}
+	}
+
+	// Run one race to completion and return the finish counter holding the result.
+	// Swimmers run on the executor if there is one, otherwise on their own threads.
+	// The race is journalled to journalFile unless it is null
+	static FinishCounter runRace(SimulationConfig config, long seed, Executor executor, Path journalFile)
+			throws InterruptedException, IOException {
+		return new ThreadedRace(config, seed).run(seed, executor == null ? threadPerTask : executor, journalFile);
+	}
+
+	// a new platform thread for every swimmer, as when each swimmer was its own Thread
+	static final Executor threadPerTask = task -> new Thread(task).start();
+
+	// where to journal a race - the configured file, numbered when there are several races
+	static Path journalFile(SimulationConfig config, int race) {
+		if (config.getJournal() == null)
+			return null;
+		if (config.getRaces() == 1)
+			return Paths.get(config.getJournal());
+		return Paths.get(config.getJournal() + "." + race);
+	}
+
+	// placings as place:team@finishMs, comma separated
+	static String formatPlacings(FinishCounter result) {
+		StringBuilder sb = new StringBuilder();
+		for (RacePlacing placing : result.getPlacings()) {
+			if (sb.length() > 0)
+				sb.append(',');
+			sb.append(placing);
+		}
+		return sb.toString();
+	}
+
+	// usage: HeadlessSimulation [numberOfRaces] [platform|virtual|executor|event] [--key=value ...]
+	// see SimulationConfig for the options, e.g. --teams=100 --config=race.properties
+	public static void main(String[] args) throws InterruptedException, IOException {
+		List<String> positional = new ArrayList<>();
+		SimulationConfig config = SimulationConfig.fromArgs(args, positional);
+		if (positional.size() > 0)
+			config.setRaces(Integer.parseInt(positional.get(0)));
+		if (positional.size() > 1)
+			config.setExecutionMode(ExecutionMode.parse(positional.get(1)));
+		int races = config.getRaces();
+		RaceLog.setLevel(config.getLogLevel());
+		if (config.isMetrics())
+			RaceMetrics.start(config.getMetricsDump());
+		ExecutionMode mode = config.getExecutionMode();
+		ExecutorService executor = null;
+		if (mode == ExecutionMode.VIRTUAL)
+			executor = ExecutionMode.newVirtualThreadExecutor();
+		else if (mode == ExecutionMode.EXECUTOR)
+			executor = Executors.newCachedThreadPool(); // pooled platform threads, reused across races
+
+		System.out.println("config " + config);
+		long batchStart = System.nanoTime();
+		// one race object of each kind, reset between races rather than built again
+		DiscreteEventRace eventRace = null;
+		ThreadedRace threadedRace = null;
+		for (int race = 1; race <= races; race++) {
+			long start = System.nanoTime();
+			long seed = config.getRaceSeed(race);
+			FinishCounter result;
+			long elapsedMs;
+			if (mode == ExecutionMode.EVENT) {
+				// placings follow the same rules, but elapsedMs is virtual race time - and a given
+				// seed always gives the same placings
+				if (eventRace == null)
+					eventRace = new DiscreteEventRace(config, seed);
+				else
+					eventRace.reset(seed);
+				Path journalFile = journalFile(config, race);
+				RaceJournal journal = journalFile == null ? null
+						: new RaceJournal(journalFile, config, eventRace::nowNanos); // virtual time
+				eventRace.setJournal(journal);
+				result = eventRace.run();
+				elapsedMs = eventRace.elapsed();
+				if (journal != null) {
+					eventRace.setJournal(null);
+					journal.close();
+				}
+			} else {
+				if (threadedRace == null)
+					threadedRace = new ThreadedRace(config, seed);
+				result = threadedRace.run(seed, executor == null ? threadPerTask : executor,
+						journalFile(config, race));
+				elapsedMs = (System.nanoTime() - start) / 1_000_000;
+			}
+			// one key=value line per race so the output is easy to parse
+			System.out.println("race=" + race + " mode=" + mode + " teams=" + config.getNumTeams() + " winningTeam="
+					+ result.getWinningTeam() + " winner=" + result.getWinner() + " elapsedMs=" + elapsedMs
+					+ " placings=" + formatPlacings(result));
+		}
+		double seconds = (System.nanoTime() - batchStart) / 1e9;
+		if (executor != null)
+			executor.shutdown();
+		RaceLog.close(); // write out anything still buffered
+		if (threadedRace != null && threadedRace.stadiumGrid.getWatchdog() != null)
+			System.out.println(threadedRace.stadiumGrid.getWatchdog());
+		if (config.isMetrics()) {
+			RaceMetrics.stop();
+			System.out.print(RaceMetrics.get().dump());
+		}
+		System.out.printf("races=%d totalSeconds=%.3f racesPerSecond=%.4f%n", races, seconds, races / seconds);
+	}
+}
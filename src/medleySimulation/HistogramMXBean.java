@@ -0,0 +1,23 @@
+//What JMX clients (jconsole, VisualVM) see of each LatencyHistogram
+
+package medleySimulation;
+
+public interface HistogramMXBean {
+	String getName();
+
+	long getCount();
+
+	long getTotalNanos();
+
+	double getMeanNanos();
+
+	long getMaxNanos();
+
+	long getP50Nanos();
+
+	long getP90Nanos();
+
+	long getP99Nanos();
+
+	void reset();
+}
@@ -0,0 +1,168 @@
+//Plays a RaceJournal back through StadiumView and CounterDisplay, at any speed, without
+//running any swimmers - or dumps it as text for auditing. The journal header holds the
+//race sizes, so the replay builds a matching grid itself.
+
+package medleySimulation;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class JournalReplay {
+	private static final String[] typeNames = { "?", "LOCATION", "CLAIM", "DIVE", "HANDOFF", "FINISH" };
+
+	private final MappedByteBuffer records; // header and records, read only
+	private final SimulationConfig config; // race sizes from the header
+	private final long count;
+
+	public JournalReplay(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (records.capacity() < RaceJournal.HEADER_BYTES || records.getInt(0) != RaceJournal.MAGIC)
+			throw new IOException(file + " is not a race journal");
+		if (records.getInt(4) != RaceJournal.VERSION || records.getInt(8) != RaceJournal.RECORD_BYTES)
+			throw new IOException(file + " is journal version " + records.getInt(4) + ", expected "
+					+ RaceJournal.VERSION);
+		config = new SimulationConfig().setGrid(records.getInt(12), records.getInt(16))
+				.setNumTeams(records.getInt(20)).setTeamSize(records.getInt(24)).setEntrances(records.getInt(32))
+				.setLockingMode(StadiumGrid.LockingMode.values()[records.getInt(36)]);
+		config.set("laneSpacing", Integer.toString(records.getInt(28)));
+		config.validate();
+		long written = records.getLong(RaceJournal.COUNT_OFFSET);
+		long fits = (records.capacity() - RaceJournal.HEADER_BYTES) / RaceJournal.RECORD_BYTES;
+		count = written > 0 ? Math.min(written, fits) : fits; // not closed - read until the zero records
+	}
+
+	public SimulationConfig getConfig() {
+		return config;
+	}
+
+	public long getRecordCount() {
+		return count;
+	}
+
+	// record fields
+	private int at(long record) {
+		return (int) (RaceJournal.HEADER_BYTES + record * RaceJournal.RECORD_BYTES);
+	}
+
+	public long time(long record) {
+		return records.getLong(at(record));
+	}
+
+	public int type(long record) {
+		return records.getInt(at(record) + 8);
+	}
+
+	public int id(long record) {
+		return records.getInt(at(record) + 12);
+	}
+
+	public int a(long record) {
+		return records.getInt(at(record) + 16);
+	}
+
+	public int b(long record) {
+		return records.getInt(at(record) + 20);
+	}
+
+	public int c(long record) {
+		return records.getInt(at(record) + 24);
+	}
+
+	// one line per record
+	public void dump(PrintStream out) {
+		out.println("journal " + config + " records=" + count);
+		for (long r = 0; r < count; r++) {
+			int type = type(r);
+			if (type == 0)
+				break; // end of an unclosed journal
+			String name = type < typeNames.length ? typeNames[type] : Integer.toString(type);
+			out.printf("%12.3fms %-8s id=%d a=%d b=%d c=%d%n", time(r) / 1e6, name, id(r), a(r), b(r), c(r));
+		}
+	}
+
+	// apply every record to the snapshot and finish counter, sleeping so the race plays out
+	// at speed times real time
+	public void play(LocationSnapshot snapshot, FinishCounter finish, double speed) throws InterruptedException {
+		long start = System.nanoTime();
+		long first = count > 0 ? time(0) : 0;
+		// finishers can be journalled out of place order - hold each one back until the
+		// places before it are in, so the replayed placings match the race
+		long[] finishers = new long[config.getNumTeams()];
+		Arrays.fill(finishers, -1);
+		int nextPlace = 0;
+		finish.startRace();
+		for (long r = 0; r < count; r++) {
+			int type = type(r);
+			if (type == 0)
+				break;
+			long due = (long) ((time(r) - first) / speed);
+			long ahead = due - (System.nanoTime() - start);
+			if (ahead > 1_000_000)
+				Thread.sleep(ahead / 1_000_000);
+			if (type == RaceJournal.LOCATION)
+				snapshot.write(id(r), a(r), b(r), c(r)); // this thread is the only writer
+			else if (type == RaceJournal.FINISH) {
+				finishers[b(r) - 1] = r;
+				while (nextPlace < finishers.length && finishers[nextPlace] >= 0) {
+					long placed = finishers[nextPlace++];
+					finish.finishRace(id(placed), a(placed));
+				}
+			}
+		}
+	}
+
+	// usage: JournalReplay <journal> [speed|dump] - speed 2 plays twice as fast
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("usage: JournalReplay <journal> [speed|dump]");
+			System.exit(1);
+		}
+		JournalReplay replay = new JournalReplay(Paths.get(args[0]));
+		if (args.length > 1 && args[1].equals("dump")) {
+			replay.dump(System.out);
+			return;
+		}
+		double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+
+		SimulationConfig config = replay.getConfig();
+		FinishCounter finish = new FinishCounter(config.getNumTeams());
+		StadiumGrid grid = new StadiumGrid(config, finish);
+		PeopleLocation[] people = new PeopleLocation[config.getNumSwimmers()];
+		SwimStroke[] strokes = SwimStroke.values();
+		for (int i = 0; i < people.length; i++)
+			people[i] = new PeopleLocation(i, strokes[i % config.getTeamSize()].getColour()); // as SwimTeam does
+
+		StadiumView view = new StadiumView(people, grid);
+		JLabel winnerLabel = new JLabel("Winner: ");
+		winnerLabel.setForeground(Color.BLACK);
+		new CounterDisplay(winnerLabel, finish).start();
+		JPanel panel = new JPanel(new BorderLayout());
+		panel.add(view, BorderLayout.CENTER);
+		panel.add(winnerLabel, BorderLayout.SOUTH);
+		JFrame frame = new JFrame("Swim Medley Relay Replay - " + args[0]);
+		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		frame.setSize(600, 800); // same as MedleySimulation
+		frame.add(panel);
+		frame.setVisible(true);
+
+		Thread viewThread = new Thread(view);
+		viewThread.setDaemon(true);
+		viewThread.start();
+		replay.play(grid.getSnapshot(), finish, speed);
+	}
+}
@@ -0,0 +1,131 @@
+//Histogram of durations in nanoseconds, cheap enough to record into from every swimmer.
+//Values go into log-linear buckets - four per power of two, so a bucket is within 25% of
+//any value in it - and each bucket is a LongAdder, so threads recording at once add to
+//their own cells instead of fighting over one counter. Nothing is allocated per record.
+
+package medleySimulation;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram implements HistogramMXBean {
+	private static final int subBits = 2; // 2^subBits buckets per power of two
+	private static final int buckets = (64 - subBits) << subBits;
+
+	private final String name;
+	private final LongAdder[] counts = new LongAdder[buckets];
+	private final LongAdder total = new LongAdder(); // sum of everything recorded
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	LatencyHistogram(String name) {
+		this.name = name;
+		for (int i = 0; i < buckets; i++)
+			counts[i] = new LongAdder();
+	}
+
+	// bucket for a value - values below 4 get a bucket each
+	static int bucket(long value) {
+		if (value < (1 << subBits))
+			return (int) Math.max(value, 0);
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exp - subBits)) & ((1 << subBits) - 1);
+		return ((exp - subBits + 1) << subBits) + sub;
+	}
+
+	// largest value that goes into a bucket
+	static long bucketTop(int bucket) {
+		if (bucket < (1 << subBits))
+			return bucket;
+		int exp = (bucket >>> subBits) + subBits - 1;
+		long sub = bucket & ((1 << subBits) - 1);
+		long bottom = ((1L << subBits) + sub) << (exp - subBits);
+		return bottom + (1L << (exp - subBits)) - 1;
+	}
+
+	public void record(long nanos) {
+		counts[bucket(nanos)].increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getCount() {
+		long n = 0;
+		for (LongAdder c : counts)
+			n += c.sum();
+		return n;
+	}
+
+	@Override
+	public long getTotalNanos() {
+		return total.sum();
+	}
+
+	@Override
+	public double getMeanNanos() {
+		long n = getCount();
+		return n == 0 ? 0 : (double) total.sum() / n;
+	}
+
+	@Override
+	public long getMaxNanos() {
+		return max.get();
+	}
+
+	// value that fraction of records were at or under, to bucket accuracy
+	public long percentile(double fraction) {
+		long[] snapshot = new long[buckets];
+		long n = 0;
+		for (int i = 0; i < buckets; i++) {
+			snapshot[i] = counts[i].sum();
+			n += snapshot[i];
+		}
+		if (n == 0)
+			return 0;
+		long wanted = Math.max(1, (long) Math.ceil(fraction * n));
+		long seen = 0;
+		for (int i = 0; i < buckets; i++) {
+			seen += snapshot[i];
+			if (seen >= wanted)
+				return Math.min(bucketTop(i), max.get());
+		}
+		return max.get();
+	}
+
+	@Override
+	public long getP50Nanos() {
+		return percentile(0.50);
+	}
+
+	@Override
+	public long getP90Nanos() {
+		return percentile(0.90);
+	}
+
+	@Override
+	public long getP99Nanos() {
+		return percentile(0.99);
+	}
+
+	// not atomic with respect to concurrent records - a record during a reset may be half kept
+	@Override
+	public void reset() {
+		for (LongAdder c : counts)
+			c.reset();
+		total.reset();
+		max.reset();
+	}
+
+	// one line - count, mean, percentiles and max in milliseconds
+	@Override
+	public String toString() {
+		return String.format("%-16s count=%d meanMs=%.3f p50Ms=%.3f p90Ms=%.3f p99Ms=%.3f maxMs=%.3f", name,
+				getCount(), getMeanNanos() / 1e6, getP50Nanos() / 1e6, getP90Nanos() / 1e6, getP99Nanos() / 1e6,
+				getMaxNanos() / 1e6);
+	}
+}
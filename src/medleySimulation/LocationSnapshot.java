@@ -0,0 +1,77 @@
+//Packed, lock-free copy of where every person is, for renderers and exporters.
+//Each person has four ints - a sequence number, x, y and state flags - and is written
+//only by that person's own thread, so each slot is a single-writer seqlock: the writer
+//makes the sequence odd, writes, then makes it even again, and a reader retries if the
+//sequence was odd or changed while it was reading. Neither side locks or allocates.
+
+package medleySimulation;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class LocationSnapshot {
+	public static final int ARRIVED = 1; // state flag: has arrived at the event
+	public static final int IN_STADIUM = 2; // state flag: is inside, x and y are valid
+
+	public static final int FIELDS = 3; // ints per person copied out by readAll: x, y, state
+
+	private static final int STRIDE = 4; // seq, x, y, state
+	private final AtomicIntegerArray slots;
+	private final int size;
+
+	public LocationSnapshot(int people) {
+		size = people;
+		slots = new AtomicIntegerArray(people * STRIDE);
+		for (int id = 0; id < people; id++) {
+			slots.set(id * STRIDE + 1, -1); // nowhere yet
+			slots.set(id * STRIDE + 2, -1);
+		}
+	}
+
+	// everyone back to nowhere, for the next race - only between races, when nobody is writing
+	public void reset() {
+		for (int id = 0; id < size; id++)
+			write(id, -1, -1, 0);
+	}
+
+	// number of people in the snapshot
+	public int size() {
+		return size;
+	}
+
+	// publish a person's position - must only be called by that person's thread
+	public void write(int id, int x, int y, int state) {
+		int base = id * STRIDE;
+		int seq = slots.get(base);
+		slots.set(base, seq + 1); // odd: write in progress
+		slots.set(base + 1, x);
+		slots.set(base + 2, y);
+		slots.set(base + 3, state);
+		slots.set(base, seq + 2); // even: consistent again
+	}
+
+	// copy one person's x, y and state into out[offset..offset+2]
+	public void read(int id, int[] out, int offset) {
+		int base = id * STRIDE;
+		while (true) {
+			int before = slots.get(base);
+			if ((before & 1) == 0) {
+				int x = slots.get(base + 1);
+				int y = slots.get(base + 2);
+				int state = slots.get(base + 3);
+				if (slots.get(base) == before) { // nobody wrote while we were reading
+					out[offset] = x;
+					out[offset + 1] = y;
+					out[offset + 2] = state;
+					return;
+				}
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	// copy everyone into out, FIELDS ints per person - out must hold size() * FIELDS
+	public void readAll(int[] out) {
+		for (int id = 0; id < size; id++)
+			read(id, out, id * FIELDS);
+	}
+}
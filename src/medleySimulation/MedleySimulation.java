@@ -11,16 +11,18 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 
 public class MedleySimulation {
 
-    static final int numTeams = 10; // Total number of teams participating in the simulation
+    static SimulationConfig config; // Sizes of everything, from the command line or a properties file
+    static int numTeams = 10; // Total number of teams participating in the simulation
 
     // Synchronization mechanisms for controlling the start and coordination of threads
     private static CountDownLatch startLatch = new CountDownLatch(1); // Latch to wait for the "Start" button press
-    private static final CyclicBarrier teamBarrier = new CyclicBarrier(numTeams); // Barrier to synchronize team actions
+    private static CyclicBarrier teamBarrier; // Barrier to synchronize team actions, one party per team
 
     static int frameX = 600; // Width of the application frame
     static int frameY = 800; // Height of the application frame
@@ -223,10 +225,9 @@ public class MedleySimulation {
         gamePanel.add(stadiumView, BorderLayout.CENTER);
         gamePanel.add(buttonPanel, BorderLayout.SOUTH);
 
-        // Initialize the CounterDisplay and start its thread
+        // Initialize the CounterDisplay - it listens to the finish line, no thread needed
         counterDisplay = new CounterDisplay(winnerLabel, finishLine);
-        Thread resultsThread = new Thread(counterDisplay);
-        resultsThread.start();
+        counterDisplay.start();
 
         return gamePanel; // Return the game panel
     }
@@ -266,35 +267,49 @@ public class MedleySimulation {
     }
 
     // Main method - initializes and starts the simulation
-    public static void main(String[] args) throws InterruptedException {
-        finishLine = new FinishCounter(); // Initialize finish line counter
+    public static void main(String[] args) throws InterruptedException, IOException {
+        config = SimulationConfig.fromArgs(args); // e.g. --teams=20 or --config=race.properties
+        RaceLog.setLevel(config.getLogLevel()); // --log=debug for every stroke, --log=off for silence
+        if (config.isMetrics())
+            RaceMetrics.start(config.getMetricsDump()); // see them in jconsole, or --metricsDump=10
+        numTeams = config.getNumTeams();
+        gridX = config.getGridX();
+        gridY = config.getGridY();
+        teamBarrier = new CyclicBarrier(numTeams);
+        finishLine = new FinishCounter(numTeams); // Initialize finish line counter
 
         // Initialize the stadium grid with the given dimensions and number of teams
         try {
-            stadiumGrid = new StadiumGrid(gridX, gridY, numTeams, finishLine);
+            stadiumGrid = new StadiumGrid(config, finishLine);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
 
-        SwimTeam.stadium = stadiumGrid; // Share the stadium grid with SwimTeam class
-        Swimmer.stadium = stadiumGrid; // Share the stadium grid with Swimmer class
+        RaceJournal journal = null;
+        if (config.getJournal() != null) { // --journal=race.mdj records the race for JournalReplay
+            journal = new RaceJournal(Paths.get(config.getJournal()), config);
+            stadiumGrid.setJournal(journal);
+            finishLine.addListener(journal);
+        }
+
 
         // Initialize array to keep track of all people's locations
-        peopleLocations = new PeopleLocation[numTeams * SwimTeam.sizeOfTeam];
+        peopleLocations = new PeopleLocation[config.getNumSwimmers()];
         Color[] teamColors = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW, Color.CYAN, 
                               Color.MAGENTA, Color.ORANGE, Color.PINK, Color.GRAY, Color.DARK_GRAY};
 
         // Create PeopleLocation instances for each person
         for (int i = 0; i < peopleLocations.length; i++) {
-            int teamID = i / SwimTeam.sizeOfTeam;
+            int teamID = i / config.getTeamSize();
             peopleLocations[i] = new PeopleLocation(i, teamColors[teamID % teamColors.length]); // Initialize with ID and Color
         }
 
         teams = new SwimTeam[numTeams]; // Initialize the array for team threads
 
-        // Create and initialize team threads
+        // Create and initialize team threads - speeds and arrival times come from the seed
+        RaceRandom random = new RaceRandom(config.getRaceSeed(1), peopleLocations.length, config.getSpeeds());
         for (int i = 0; i < numTeams; i++) {
-            teams[i] = new SwimTeam(i, finishLine, peopleLocations, teamBarrier);
+            teams[i] = new SwimTeam(stadiumGrid, i, config.getTeamSize(), finishLine, peopleLocations, teamBarrier, random);
         }
 
         setupGUI(frameX, frameY); // Setup GUI for the simulation
@@ -306,9 +321,20 @@ public class MedleySimulation {
         // Wait until the "Start" button is pressed
         startLatch.await();
 
+        if (stadiumGrid.getWatchdog() != null)
+            stadiumGrid.getWatchdog().start(); // daemon thread - dies with the window
+        finishLine.startRace(); // finish times are measured from the Start button
+
         // Start all team threads
         for (int i = 0; i < numTeams; i++) {
             teams[i].start();
         }
+
+        if (journal != null) { // close the journal once every swimmer is done
+            for (int i = 0; i < numTeams; i++) {
+                teams[i].join();
+            }
+            journal.close();
+        }
     }
 }
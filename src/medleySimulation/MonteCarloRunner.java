@@ -0,0 +1,188 @@
+//Estimates each team's chance of winning by running many independent races in parallel.
+//Every race is a DiscreteEventRace with its own seed, and each worker thread keeps one race
+//that it resets between races, so races share nothing while they run and a worker does not
+//build a stadium per race. They are split across a work-stealing
+//ForkJoinPool, and results go into LongAdder counters, which threads add to without
+//contending - so adding cores adds races per second.
+
+package medleySimulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class MonteCarloRunner {
+	static final int racesPerTask = 4; // smallest batch of races worth forking
+	static final int splitBucketMs = 250; // width of a split time histogram bucket
+	static final int splitBuckets = 80; // the last bucket also holds anything longer
+
+	private final SimulationConfig config;
+	private final int numTeams;
+	private final int teamSize;
+
+	// results, added to by every worker
+	private final LongAdder[] wins; // races won per team
+	private final LongAdder[] placeTotals; // sum of finishing places per team, for the mean
+	private final LongAdder[][] splitHistogram; // per leg, races with the split in each bucket
+	private final LongAdder[] splitTotals; // per leg, sum of splits in ms
+	private final LongAdder racesRun = new LongAdder();
+	private final ThreadLocal<DiscreteEventRace> workerRace = new ThreadLocal<>(); // reset for each race
+
+	MonteCarloRunner(SimulationConfig config) {
+		this.config = config.validate();
+		numTeams = config.getNumTeams();
+		teamSize = config.getTeamSize();
+		wins = adders(numTeams);
+		placeTotals = adders(numTeams);
+		splitTotals = adders(teamSize);
+		splitHistogram = new LongAdder[teamSize][];
+		for (int leg = 0; leg < teamSize; leg++)
+			splitHistogram[leg] = adders(splitBuckets);
+	}
+
+	private static LongAdder[] adders(int n) {
+		LongAdder[] adders = new LongAdder[n];
+		for (int i = 0; i < n; i++)
+			adders[i] = new LongAdder();
+		return adders;
+	}
+
+	// run races 1 to races on the pool - race n always uses config.getRaceSeed(n), so the
+	// totals are the same however the work is split
+	public void run(ForkJoinPool pool, int races) {
+		pool.invoke(new RaceBatch(1, races + 1));
+	}
+
+	// races [from, to), split in half until a batch is small enough to run
+	private class RaceBatch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		RaceBatch(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= racesPerTask) {
+				for (int race = from; race < to; race++)
+					runOne(race);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new RaceBatch(from, middle), new RaceBatch(middle, to));
+		}
+	}
+
+	private void runOne(int race) {
+		FinishCounter result;
+		try {
+			long seed = config.getRaceSeed(race);
+			DiscreteEventRace eventRace = workerRace.get();
+			if (eventRace == null) {
+				eventRace = new DiscreteEventRace(config, seed);
+				workerRace.set(eventRace);
+			} else {
+				eventRace.reset(seed);
+			}
+			result = eventRace.run();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("race " + race + " interrupted", e);
+		}
+		for (RacePlacing placing : result.getPlacings()) {
+			int team = placing.getTeam();
+			placeTotals[team].add(placing.getPosition());
+			if (placing.getPosition() == 1)
+				wins[team].increment();
+		}
+		SwimStroke[] strokes = SwimStroke.values();
+		for (int team = 0; team < numTeams; team++) {
+			for (int leg = 0; leg < teamSize; leg++) {
+				long split = result.getSplit(team, strokes[leg]);
+				if (split < 0)
+					continue; // not swum
+				long ms = split / 1_000_000;
+				splitTotals[leg].add(ms);
+				splitHistogram[leg][(int) Math.min(ms / splitBucketMs, splitBuckets - 1)].increment();
+			}
+		}
+		racesRun.increment();
+	}
+
+	// results - read once the run is over
+	public long getRaces() {
+		return racesRun.sum();
+	}
+
+	public double winRate(int team) {
+		long races = getRaces();
+		return races == 0 ? 0 : (double) wins[team].sum() / races;
+	}
+
+	public double meanPlace(int team) {
+		long races = getRaces();
+		return races == 0 ? 0 : (double) placeTotals[team].sum() / races;
+	}
+
+	public double meanSplitMs(int leg) {
+		long swum = 0;
+		for (LongAdder bucket : splitHistogram[leg])
+			swum += bucket.sum();
+		return swum == 0 ? 0 : (double) splitTotals[leg].sum() / swum;
+	}
+
+	// split (ms) that fraction of legs were at or under, to bucket accuracy
+	public long splitPercentileMs(int leg, double fraction) {
+		long[] counts = new long[splitBuckets];
+		long swum = 0;
+		for (int b = 0; b < splitBuckets; b++) {
+			counts[b] = splitHistogram[leg][b].sum();
+			swum += counts[b];
+		}
+		long wanted = (long) Math.ceil(fraction * swum);
+		long seen = 0;
+		for (int b = 0; b < splitBuckets; b++) {
+			seen += counts[b];
+			if (seen >= wanted && seen > 0)
+				return (long) (b + 1) * splitBucketMs; // top of the bucket
+		}
+		return 0;
+	}
+
+	// usage: MonteCarloRunner [races] [threads] [--key=value ...] - options as for
+	// HeadlessSimulation, e.g. --teams=8 --speeds=30,31,... --seed=1
+	public static void main(String[] args) throws IOException {
+		List<String> positional = new ArrayList<>();
+		SimulationConfig config = SimulationConfig.fromArgs(args, positional);
+		int races = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : config.getRaces();
+		int threads = positional.size() > 1 ? Integer.parseInt(positional.get(1))
+				: Runtime.getRuntime().availableProcessors();
+
+		System.out.println("config " + config + " races=" + races + " threads=" + threads);
+		MonteCarloRunner runner = new MonteCarloRunner(config);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		runner.run(pool, races);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		pool.shutdown();
+
+		for (int team = 0; team < runner.numTeams; team++)
+			System.out.printf("team=%d winRate=%.4f meanPlace=%.2f%n", team, runner.winRate(team),
+					runner.meanPlace(team));
+		SwimStroke[] strokes = SwimStroke.values();
+		for (int leg = 0; leg < runner.teamSize; leg++)
+			System.out.printf("leg=%s meanSplitMs=%.0f p10=%d p50=%d p90=%d%n", strokes[leg],
+					runner.meanSplitMs(leg), runner.splitPercentileMs(leg, 0.1),
+					runner.splitPercentileMs(leg, 0.5), runner.splitPercentileMs(leg, 0.9));
+		System.out.printf("races=%d totalSeconds=%.3f racesPerSecond=%.2f%n", runner.getRaces(), seconds,
+				runner.getRaces() / seconds);
+	}
+}
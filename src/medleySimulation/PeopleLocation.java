@@ -11,9 +11,12 @@ public class PeopleLocation { // this is made a separate class so don't have to
 	private final int ID; // each person has an ID
 	private Color myColor; // colour of the person
 
-	private boolean inStadium; // are they here?
-	private boolean arrived; // have they arrived at the event?
-	private GridBlock location; // which GridBlock are they on?
+	// volatile: written by the person's thread, read by the view
+	private volatile boolean inStadium; // are they here?
+	private volatile boolean arrived; // have they arrived at the event?
+	private volatile GridBlock location; // which GridBlock are they on?
+	private LocationSnapshot snapshot; // packed copy for renderers, may be null
+	private RaceJournal journal; // every change is appended here too, may be null
 
 	// constructor
 	PeopleLocation(int ID, Color c) {
@@ -23,9 +26,43 @@ public class PeopleLocation { // this is made a separate class so don't have to
 		this.ID = ID;
 	}
 
+	// publish every change to this snapshot from now on
+	public void setSnapshot(LocationSnapshot snapshot) {
+		this.snapshot = snapshot;
+		publish();
+	}
+
+	// journal every change from now on
+	public void setJournal(RaceJournal journal) {
+		this.journal = journal;
+	}
+
+	// copy the current state into the snapshot and journal, if there are any
+	private void publish() {
+		if (snapshot == null && journal == null)
+			return;
+		GridBlock block = location;
+		int state = (arrived ? LocationSnapshot.ARRIVED : 0) | (inStadium ? LocationSnapshot.IN_STADIUM : 0);
+		int x = block == null ? -1 : block.getX();
+		int y = block == null ? -1 : block.getY();
+		if (snapshot != null)
+			snapshot.write(ID, x, y, state);
+		if (journal != null)
+			journal.location(ID, x, y, state);
+	}
+
+	// back to not arrived and nowhere, for the next race
+	public void reset() {
+		inStadium = false;
+		arrived = false;
+		location = null;
+		publish();
+	}
+
 	// setter
 	public void setInStadium(boolean in) {
 		inStadium = in;
+		publish();
 	}
 
 	// getter and setter
@@ -39,9 +76,11 @@ public class PeopleLocation { // this is made a separate class so don't have to
 	public void setInStadium()
 	{
 		inStadium = true;
+		publish();
 	}
 	public void setArrived() {
 		arrived = true;
+		publish();
 	}
 
 	// getter and setter
@@ -51,6 +90,7 @@ public class PeopleLocation { // this is made a separate class so don't have to
 
 	public void setLocation(GridBlock location) {
 		this.location = location;
+		publish();
 	}
 
 	// getter
@@ -0,0 +1,157 @@
+//Binary journal of everything that changes in a race - moves, dives, handoffs
+//and finishes - so a race can be audited or re-rendered without running it again
+//(see JournalReplay). Records are a fixed 32 bytes: an append claims its slot with one
+//atomic add and writes straight into a memory-mapped segment of the file, so there is no
+//lock, no system call and no allocation per event - cheap enough to leave on. Appends
+//count themselves in and out so close() can wait for any still writing, and anything
+//appended after close is dropped.
+//
+//File layout: a HEADER_BYTES header (magic, version, race sizes, record count) and then
+//records of time (long, ns since the journal opened), type, id, a, b, c (ints) and one
+//int of padding. The count is written when the journal is closed. Times are on the race's
+//clock - wall time for threaded races, virtual time for a DiscreteEventRace.
+
+package medleySimulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+public class RaceJournal implements FinishListener {
+	static final int MAGIC = 0x4D444C4A; // "MDLJ"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 64;
+	static final int RECORD_BYTES = 32;
+	static final int SEGMENT_BYTES = 1 << 23; // mapped at a time - a whole number of records
+	static final int COUNT_OFFSET = 40; // where close() writes the record count
+	private static final int maxSegments = 1 << 10; // 8GB of journal
+
+	// record types
+	public static final int LOCATION = 1; // id: person, a, b: x, y (-1 if nowhere), c: LocationSnapshot state
+	public static final int CLAIM = 2; // no longer written - every claim is a LOCATION. Read in old journals
+	public static final int DIVE = 3; // id: swimmer, a, b: block dived into
+	public static final int HANDOFF = 4; // id: swimmer touching, a: team, b: next leg
+	public static final int FINISH = 5; // id: swimmer, a: team, b: place (1 based)
+
+	private final FileChannel channel;
+	private final AtomicReferenceArray<MappedByteBuffer> segments = new AtomicReferenceArray<>(maxSegments);
+	private final AtomicLong nextRecord = new AtomicLong();
+	private final LongSupplier clock; // nanoseconds
+	private final long startNanos;
+	private volatile boolean closed;
+	private final AtomicInteger appending = new AtomicInteger(); // appends between their closed check and last write
+
+	// create (or overwrite) a journal for a race of this size
+	public RaceJournal(Path file, SimulationConfig config) throws IOException {
+		this(file, config, System::nanoTime);
+	}
+
+	// the same, timing records by clock
+	public RaceJournal(Path file, SimulationConfig config, LongSupplier clock) throws IOException {
+		this.clock = clock;
+		startNanos = clock.getAsLong();
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_BYTES);
+		header.putInt(config.getGridX()).putInt(config.getGridY()).putInt(config.getNumTeams());
+		header.putInt(config.getTeamSize()).putInt(config.getLaneSpacing()).putInt(config.getEntrances());
+		header.putInt(config.getLockingMode().ordinal());
+		header.putLong(COUNT_OFFSET, 0); // filled in by close()
+		header.rewind();
+		channel.write(header, 0);
+	}
+
+	public void location(int id, int x, int y, int state) {
+		append(LOCATION, id, x, y, state);
+	}
+
+	public void dive(int id, GridBlock block) {
+		append(DIVE, id, block.getX(), block.getY(), 0);
+	}
+
+	public void handOff(int id, int team, int nextLeg) {
+		append(HANDOFF, id, team, nextLeg, 0);
+	}
+
+	// finishes come in as FinishCounter events
+	@Override
+	public void placingRecorded(RacePlacing placing) {
+		append(FINISH, placing.getSwimmer(), placing.getTeam(), placing.getPosition(), 0);
+	}
+
+	public void append(int type, int id, int a, int b, int c) {
+		appending.incrementAndGet(); // before the check, so close() either waits for us or we see it
+		try {
+			if (!closed)
+				write(type, id, a, b, c);
+			// else a late event after the race - ignore rather than fail the swimmer
+		} finally {
+			appending.decrementAndGet();
+		}
+	}
+
+	private void write(int type, int id, int a, int b, int c) {
+		long time = clock.getAsLong() - startNanos;
+		long offset = nextRecord.getAndIncrement() * RECORD_BYTES;
+		MappedByteBuffer segment = segment((int) (offset / SEGMENT_BYTES));
+		int at = (int) (offset % SEGMENT_BYTES); // absolute puts - no shared buffer position
+		segment.putLong(at, time);
+		segment.putInt(at + 8, type);
+		segment.putInt(at + 12, id);
+		segment.putInt(at + 16, a);
+		segment.putInt(at + 20, b);
+		segment.putInt(at + 24, c);
+	}
+
+	// the mapped segment, mapping it the first time anyone writes into it
+	private MappedByteBuffer segment(int index) {
+		MappedByteBuffer segment = segments.get(index);
+		if (segment != null)
+			return segment;
+		synchronized (segments) { // once per 8MB, not per record
+			segment = segments.get(index);
+			if (segment == null) {
+				try {
+					segment = channel.map(FileChannel.MapMode.READ_WRITE,
+							HEADER_BYTES + (long) index * SEGMENT_BYTES, SEGMENT_BYTES);
+				} catch (IOException e) {
+					throw new IllegalStateException("journal segment " + index + " could not be mapped", e);
+				}
+				segments.set(index, segment);
+			}
+			return segment;
+		}
+	}
+
+	public long getRecordCount() {
+		return nextRecord.get();
+	}
+
+	// write the record count, trim the unused end of the last segment and flush to disk.
+	// Call once every swimmer has finished - anything appended later is dropped
+	public void close() throws IOException {
+		closed = true;
+		while (appending.get() > 0)
+			Thread.onSpinWait(); // an append that got past the check is a few puts from done
+		long count = nextRecord.get();
+		for (int i = 0; i < maxSegments && segments.get(i) != null; i++)
+			segments.get(i).force();
+		ByteBuffer countBytes = ByteBuffer.allocate(8).putLong(0, count);
+		channel.write(countBytes, COUNT_OFFSET);
+		try {
+			channel.truncate(HEADER_BYTES + count * RECORD_BYTES);
+		} catch (IOException e) {
+			// some platforms will not shrink a mapped file - the count still says where it ends
+		}
+		channel.force(true);
+		channel.close();
+	}
+}
@@ -0,0 +1,214 @@
+//Race logging that keeps console I/O off the swimmer threads. Callers drop small
+//structured events (level, event, swimmer, two ints) into a fixed ring buffer without
+//locking; a background writer drains it in batches and does all the formatting and
+//printing. System.out is synchronized, so printing straight from every swimmer made
+//them queue for the console. With the level below an event's level, logging is a single
+//field read and compare - no string building, no clock read, no allocation.
+
+package medleySimulation;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class RaceLog {
+
+	public enum Level {
+		OFF, ERROR, WARN, INFO, DEBUG;
+
+		public static Level parse(String name) {
+			return valueOf(name.trim().toUpperCase());
+		}
+	}
+
+	// what happened - the writer turns a and b into text
+	public enum Event {
+		AT_START("at start %d %d"), // a, b: starting block
+		STROKE("swimming at speed %d, y=%d"), // a: speed, b: row
+		INVALID_MOVE("invalid move to %d %d"), // a, b: target
+		BLOCK_NOT_FOUND("block %d %d not found"), // a, b: coordinates
+		DEADLOCK("deadlocked waiting for %d, in a cycle of %d"), // a: owner waited for, b: swimmers in the cycle
+		STALLED("stalled waiting for block %d %d"), // a, b: block waited for
+		STEPPED_ASIDE("stepped aside to %d %d"); // a, b: block moved to, to break a deadlock
+
+		private final String format;
+
+		Event(String format) {
+			this.format = format;
+		}
+	}
+
+	static final int capacity = 1 << 14; // events buffered before new ones are dropped
+	static final int batchSize = 256; // events written per flush of the output
+	private static final int mask = capacity - 1;
+	private static final Level[] levels = Level.values();
+	private static final Event[] events = Event.values();
+
+	private static volatile int threshold = Level.OFF.ordinal(); // events above this are ignored
+	private static volatile PrintStream out = System.out;
+
+	// the ring - slot i is free for the producer claiming position p when seq[i] == p,
+	// and full for the consumer at position p when seq[i] == p + 1 (Vyukov's bounded queue)
+	private static final AtomicLongArray seq = new AtomicLongArray(capacity);
+	private static final long[] time = new long[capacity];
+	private static final int[] kind = new int[capacity]; // level ordinal << 16 | event ordinal
+	private static final int[] swimmer = new int[capacity];
+	private static final int[] argA = new int[capacity];
+	private static final int[] argB = new int[capacity];
+	private static final AtomicLong tail = new AtomicLong(); // next position to claim
+	private static volatile long head; // next position to write out - writer thread only
+	private static final AtomicLong dropped = new AtomicLong(); // events lost to a full ring
+	private static final long startNanos = System.nanoTime();
+
+	private static Thread writer;
+	private static volatile boolean closing;
+
+	static {
+		for (int i = 0; i < capacity; i++)
+			seq.set(i, i);
+	}
+
+	private RaceLog() {
+	}
+
+	// set the level, starting the writer the first time logging is turned on
+	public static synchronized void setLevel(Level level) {
+		threshold = level.ordinal();
+		if (level != Level.OFF && writer == null) {
+			closing = false;
+			writer = new Thread(RaceLog::drainLoop, "RaceLog writer");
+			writer.setDaemon(true); // never keeps the simulation alive
+			writer.start();
+		}
+	}
+
+	public static Level getLevel() {
+		return levels[threshold];
+	}
+
+	public static void setOutput(PrintStream stream) {
+		out = stream;
+	}
+
+	public static boolean isEnabled(Level level) {
+		return level.ordinal() <= threshold;
+	}
+
+	public static void error(Event event, int id, int a, int b) {
+		if (Level.ERROR.ordinal() <= threshold)
+			offer(Level.ERROR, event, id, a, b);
+	}
+
+	public static void warn(Event event, int id, int a, int b) {
+		if (Level.WARN.ordinal() <= threshold)
+			offer(Level.WARN, event, id, a, b);
+	}
+
+	public static void info(Event event, int id, int a, int b) {
+		if (Level.INFO.ordinal() <= threshold)
+			offer(Level.INFO, event, id, a, b);
+	}
+
+	public static void debug(Event event, int id, int a, int b) {
+		if (Level.DEBUG.ordinal() <= threshold)
+			offer(Level.DEBUG, event, id, a, b);
+	}
+
+	public static long getDropped() {
+		return dropped.get();
+	}
+
+	// claim a slot and fill it in. Never blocks - if the writer has fallen a whole ring
+	// behind, the event is counted as dropped instead of slowing the swimmer down
+	private static void offer(Level level, Event event, int id, int a, int b) {
+		long now = System.nanoTime();
+		long pos = tail.get();
+		while (true) {
+			int i = (int) (pos & mask);
+			long s = seq.get(i);
+			if (s == pos) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					time[i] = now;
+					kind[i] = level.ordinal() << 16 | event.ordinal();
+					swimmer[i] = id;
+					argA[i] = a;
+					argB[i] = b;
+					seq.set(i, pos + 1); // publish - the writer reads the slot after seeing this
+					return;
+				}
+				pos = tail.get(); // another producer got it
+			} else if (s < pos) {
+				dropped.incrementAndGet(); // full
+				return;
+			} else {
+				pos = tail.get(); // we were behind
+			}
+		}
+	}
+
+	// write out up to batchSize events in one go, returning how many there were
+	private static int drainBatch(StringBuilder sb) {
+		int n = 0;
+		long pos = head;
+		while (n < batchSize) {
+			int i = (int) (pos & mask);
+			if (seq.get(i) != pos + 1)
+				break; // not published yet
+			format(sb, time[i], kind[i], swimmer[i], argA[i], argB[i]);
+			seq.set(i, pos + capacity); // hand the slot back for the next lap
+			pos++;
+			n++;
+		}
+		head = pos;
+		if (n > 0) {
+			PrintStream stream = out;
+			stream.print(sb);
+			stream.flush();
+			sb.setLength(0);
+		}
+		return n;
+	}
+
+	private static void format(StringBuilder sb, long nanos, int k, int id, int a, int b) {
+		Event event = events[k & 0xffff];
+		sb.append(String.format("%10.3fms %-5s ", (nanos - startNanos) / 1e6, levels[k >>> 16]));
+		if (id >= 0)
+			sb.append("swimmer ").append(id).append(' ');
+		sb.append(String.format(event.format, a, b)).append(System.lineSeparator());
+	}
+
+	private static void drainLoop() {
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			if (drainBatch(sb) > 0)
+				continue;
+			if (closing && head == tail.get())
+				break;
+			LockSupport.parkNanos(1_000_000); // nothing to do - producers never wake us, to stay cheap
+		}
+		long lost = dropped.get();
+		if (lost > 0) {
+			out.println("RaceLog: " + lost + " events dropped (buffer full)");
+			out.flush();
+		}
+	}
+
+	// wait until everything logged so far has been written
+	public static void flush() {
+		long target = tail.get();
+		while (writer != null && writer.isAlive() && head < target)
+			LockSupport.parkNanos(1_000_000);
+	}
+
+	// write out what is left and stop the writer
+	public static synchronized void close() throws InterruptedException {
+		threshold = Level.OFF.ordinal();
+		if (writer == null)
+			return;
+		closing = true;
+		LockSupport.unpark(writer);
+		writer.join();
+		writer = null;
+	}
+}
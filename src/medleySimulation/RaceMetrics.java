@@ -0,0 +1,156 @@
+//Where the time goes in a race: how long swimmers wait to move, how long they hold blocks,
+//how often a wake-up finds its block taken again, how long teams wait at the start barrier
+//and how long each leg takes. Everything is recorded into LatencyHistograms and published
+//over JMX (medleySimulation:type=RaceMetrics and one type=Histogram per histogram), with an
+//optional text dump every few seconds. Off by default; when off each hook is one field
+//read, and when on it is a clock read and a few uncontended adds.
+
+package medleySimulation;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class RaceMetrics implements RaceMetricsMXBean {
+	public static volatile boolean enabled; // checked by every hook before reading the clock
+
+	// time blocked, per call that had to wait for its block
+	public static final LatencyHistogram moveTowardsWait = new LatencyHistogram("moveTowardsWait");
+	public static final LatencyHistogram jumpToWait = new LatencyHistogram("jumpToWait");
+	public static final LatencyHistogram blockOccupancy = new LatencyHistogram("blockOccupancy");
+	public static final LatencyHistogram barrierWait = new LatencyHistogram("barrierWait");
+	public static final LatencyHistogram[] legDuration = new LatencyHistogram[SwimStroke.values().length];
+
+	private static final LongAdder moves = new LongAdder(); // every moveTowards/jumpTo that moved
+	private static final LongAdder wakeups = new LongAdder(); // waiters woken by notifyAll/signalAll
+	private static final LongAdder spuriousWakeups = new LongAdder(); // ... that found their block taken again
+
+	private static final RaceMetrics instance = new RaceMetrics();
+	private static boolean registered;
+	private static ScheduledExecutorService dumper;
+
+	static {
+		for (SwimStroke stroke : SwimStroke.values())
+			legDuration[stroke.getOrder() - 1] = new LatencyHistogram("leg" + stroke);
+	}
+
+	private RaceMetrics() {
+	}
+
+	// turn recording on, publish over JMX and, if dumpSeconds > 0, print a dump that often
+	public static synchronized void start(int dumpSeconds) {
+		enabled = true;
+		register();
+		if (dumpSeconds > 0 && dumper == null) {
+			dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "RaceMetrics dump");
+				t.setDaemon(true);
+				return t;
+			});
+			dumper.scheduleAtFixedRate(() -> System.out.print(instance.dump()), dumpSeconds, dumpSeconds,
+					TimeUnit.SECONDS);
+		}
+	}
+
+	// stop recording and dumping - what was recorded is kept
+	public static synchronized void stop() {
+		enabled = false;
+		if (dumper != null) {
+			dumper.shutdown();
+			dumper = null;
+		}
+	}
+
+	private static void register() {
+		if (registered)
+			return;
+		registered = true;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(instance, new ObjectName("medleySimulation:type=RaceMetrics"));
+			for (LatencyHistogram h : all())
+				server.registerMBean(h, new ObjectName("medleySimulation:type=Histogram,name=" + h.getName()));
+		} catch (JMException e) {
+			System.err.println("RaceMetrics: not published over JMX - " + e);
+		}
+	}
+
+	static LatencyHistogram[] all() {
+		LatencyHistogram[] all = new LatencyHistogram[4 + legDuration.length];
+		all[0] = moveTowardsWait;
+		all[1] = jumpToWait;
+		all[2] = blockOccupancy;
+		all[3] = barrierWait;
+		System.arraycopy(legDuration, 0, all, 4, legDuration.length);
+		return all;
+	}
+
+	// hooks
+	static void moved() {
+		moves.increment();
+	}
+
+	// a parked waiter woke up - spurious if the block it wanted was taken again
+	static void wokeUp(boolean gotBlock) {
+		wakeups.increment();
+		if (!gotBlock)
+			spuriousWakeups.increment();
+	}
+
+	// MXBean
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	@Override
+	public long getMoves() {
+		return moves.sum();
+	}
+
+	@Override
+	public long getWakeups() {
+		return wakeups.sum();
+	}
+
+	@Override
+	public long getSpuriousWakeups() {
+		return spuriousWakeups.sum();
+	}
+
+	public static RaceMetrics get() {
+		return instance;
+	}
+
+	// everything, one histogram per line
+	@Override
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("metrics moves=").append(getMoves()).append(" wakeups=").append(getWakeups())
+				.append(" spuriousWakeups=").append(getSpuriousWakeups()).append(System.lineSeparator());
+		for (LatencyHistogram h : all())
+			sb.append("  ").append(h).append(System.lineSeparator());
+		return sb.toString();
+	}
+
+	@Override
+	public void reset() {
+		moves.reset();
+		wakeups.reset();
+		spuriousWakeups.reset();
+		for (LatencyHistogram h : all())
+			h.reset();
+	}
+}
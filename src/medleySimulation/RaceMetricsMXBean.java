@@ -0,0 +1,19 @@
+//What JMX clients see of RaceMetrics as a whole - the counters, and the text dump
+
+package medleySimulation;
+
+public interface RaceMetricsMXBean {
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	long getMoves();
+
+	long getWakeups();
+
+	long getSpuriousWakeups();
+
+	String dump();
+
+	void reset();
+}
@@ -0,0 +1,48 @@
+//One team's result in a race - place, finish time and the split for each leg
+
+package medleySimulation;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class RacePlacing {
+	private final int position; // 1 based
+	private final int team;
+	private final int swimmer; // swimmer who touched
+	private final long finishNanos; // after the start of the race
+	private final long[] splits; // nanoseconds per leg, in stroke order
+
+	RacePlacing(int position, int team, int swimmer, long finishNanos, long[] splits) {
+		this.position = position;
+		this.team = team;
+		this.swimmer = swimmer;
+		this.finishNanos = finishNanos;
+		this.splits = splits;
+	}
+
+	// getters
+	public int getPosition() {
+		return position;
+	}
+
+	public int getTeam() {
+		return team;
+	}
+
+	public int getSwimmer() {
+		return swimmer;
+	}
+
+	public long getFinishNanos() {
+		return finishNanos;
+	}
+
+	// split for the leg swum with this stroke
+	public long getSplit(SwimStroke stroke) {
+		return splits[stroke.getOrder() - 1];
+	}
+
+	@Override
+	public String toString() {
+		return position + ":" + team + "@" + (finishNanos / 1_000_000) + "ms";
+	}
+}
@@ -0,0 +1,70 @@
+//Every random number in a race comes from here, so a race is reproducible from one seed.
+//Each swimmer gets its own SplittableRandom stream, split off the master in ID order when
+//the race is set up - a swimmer's speed and arrival time depend only on the seed and its
+//ID, never on which thread happened to ask first. Streams are not thread safe, so each
+//one is only used by its own swimmer.
+
+package medleySimulation;
+
+import java.util.SplittableRandom;
+
+public class RaceRandom {
+	static final int minSpeed = 30; // swimmer speeds are minSpeed to maxSpeed - 1
+	static final int maxSpeed = 33;
+	static final int arrivalJitter = 10; // extra arrival delay, 0 to arrivalJitter - 1
+
+	private final long seed;
+	private final SplittableRandom[] streams; // one per swimmer
+	private final int[] speeds; // fixed speed per swimmer, or null to draw them
+
+	RaceRandom(long seed, int people) {
+		this(seed, people, null);
+	}
+
+	// fixed speeds - only arrival times vary, as when estimating win chances for known swimmers
+	RaceRandom(long seed, int people, int[] speeds) {
+		this.seed = seed;
+		this.speeds = speeds;
+		SplittableRandom master = new SplittableRandom(seed);
+		streams = new SplittableRandom[people];
+		for (int id = 0; id < people; id++)
+			streams[id] = master.split();
+	}
+
+	// the seed for race number race (1 based) of a batch started from masterSeed - any race
+	// in a batch can be rerun on its own
+	public static long raceSeed(long masterSeed, int race) {
+		return mix(masterSeed + race * 0x9E3779B97F4A7C15L);
+	}
+
+	// a fresh seed, for when none was given - print it so the race can be repeated
+	public static long randomSeed() {
+		return mix(System.nanoTime() ^ Thread.currentThread().getId());
+	}
+
+	// Stafford's mix13, as SplittableRandom uses - nearby inputs give unrelated outputs
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	// the swimmer's own stream - take speedFor first, then draw its arrival jitter
+	public SplittableRandom forSwimmer(int id) {
+		return streams[id];
+	}
+
+	// the swimmer's speed - call once, before drawing anything else from its stream
+	public int speedFor(int id) {
+		int drawn = streams[id].nextInt(minSpeed, maxSpeed); // drawn even when fixed, so the rest of the stream is the same
+		return speeds == null ? drawn : speeds[id];
+	}
+
+	static int nextArrivalJitter(SplittableRandom stream) {
+		return stream.nextInt(arrivalJitter);
+	}
+}
@@ -0,0 +1,57 @@
+//A go signal that is waited on until it is opened, like a CountDownLatch of one - but it
+//can be closed again, so gates and handoffs are reset between races instead of being
+//thrown away. Waiting uses a ReentrantLock rather than a monitor so it does not pin
+//virtual threads, and open() only takes the lock if someone is waiting.
+
+package medleySimulation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class RaceSignal {
+	private volatile boolean open;
+	private final AtomicInteger waiters = new AtomicInteger();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition opened = lock.newCondition();
+
+	// wait until the signal is opened - returns at once if it already is
+	public void await() throws InterruptedException {
+		if (open)
+			return;
+		waiters.incrementAndGet(); // must be visible before we re-check, see open()
+		try {
+			lock.lockInterruptibly();
+			try {
+				while (!open)
+					opened.await();
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			waiters.decrementAndGet();
+		}
+	}
+
+	public boolean isOpen() {
+		return open;
+	}
+
+	// let every waiter, and everyone who waits from now on, through
+	public void open() {
+		open = true;
+		if (waiters.get() > 0) {
+			lock.lock();
+			try {
+				opened.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	// close it again for the next race - only when nobody is waiting on it
+	public void close() {
+		open = false;
+	}
+}
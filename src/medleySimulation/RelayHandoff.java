@@ -0,0 +1,57 @@
+//Relay changeover for one team - a chain of one signal per leg. A swimmer may dive only
+//when the leg before theirs has touched, and handing off opens the next leg's signal
+//only, so exactly one swimmer (the next in stroke order) is woken per changeover.
+
+package medleySimulation;
+
+import medleySimulation.Swimmer.SwimStroke;
+
+public class RelayHandoff {
+	private final RaceSignal[] turn; // turn[leg] opens when that leg may dive
+
+	RelayHandoff(int legs) {
+		turn = new RaceSignal[legs];
+		for (int leg = 0; leg < legs; leg++)
+			turn[leg] = new RaceSignal();
+		reset();
+	}
+
+	// back to the start of a race - only the first leg may dive
+	void reset() {
+		for (RaceSignal signal : turn)
+			signal.close();
+		turn[0].open(); // first leg dives at the start
+	}
+
+	// the leg swum with this stroke - the medley order, from SwimStroke.getOrder()
+	public static int legOf(SwimStroke stroke) {
+		return stroke.getOrder() - 1;
+	}
+
+	public int legs() {
+		return turn.length;
+	}
+
+	// is this the team's last leg?
+	public boolean isLastLeg(int leg) {
+		return leg == turn.length - 1;
+	}
+
+	// wait until the swimmer before this leg has touched
+	public void awaitTurn(int leg) throws InterruptedException {
+		turn[leg].await();
+	}
+
+	// may this leg dive now?
+	public boolean isTurn(int leg) {
+		return turn[leg].isOpen();
+	}
+
+	// this leg has touched - wake the next swimmer only. Returns the next leg, -1 if this was the last
+	public int handOff(int leg) {
+		if (isLastLeg(leg))
+			return -1;
+		turn[leg + 1].open();
+		return leg + 1;
+	}
+}
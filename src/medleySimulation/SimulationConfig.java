@@ -0,0 +1,387 @@
+//Sizes of everything in a simulation - teams, team size, grid and lanes - plus how the
+//race is run. Loaded from --key=value command line arguments and/or a properties file
+//(--config=file.properties, command line wins), so scaling runs need no code changes.
+
+package medleySimulation;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+public class SimulationConfig implements Cloneable {
+	static final int minGridY = 25; // room for the pool, starting row, entrance and benches
+	static final int maxEntrances = 10; // entrances must all fit between the starting row and benches
+
+	private int numTeams = 10; // teams (and lanes) in a race
+	private int teamSize = SwimTeam.sizeOfTeam; // swimmers per team, one stroke each
+	private int gridX = 50; // grid width - getGridX grows it if the lanes do not fit
+	private int gridY = 120; // grid length
+	private int laneSpacing = 5; // starting blocks are at x % laneSpacing == 1
+	private int entrances = 4; // swimmers that can come into the stadium at once
+	private StadiumGrid.LockingMode lockingMode = StadiumGrid.LockingMode.PER_BLOCK;
+	private StadiumGrid.GridBackend backend = StadiumGrid.GridBackend.OBJECTS;
+	private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+	private int races = 1; // races run back to back by the headless runner
+	private int heatSize = 10; // lanes per heat in a Tournament
+	private RaceLog.Level logLevel = RaceLog.Level.WARN; // race events at or above this are logged
+	private String journal; // binary journal file to record races to, null for none
+	private long seed = RaceRandom.randomSeed(); // master seed - give the same one to repeat a run
+	private int[] speeds; // every swimmer's speed, in ID order - null to draw them at random
+	private boolean metrics; // record RaceMetrics and publish them over JMX
+	private int metricsDump; // seconds between metric dumps, 0 for none
+	private boolean pathPlanning; // static deck routes with a sidestep, see DeckPathPlanner
+	private GridWatchdog.Action watchdog = GridWatchdog.Action.OFF; // watch the grid for deadlocks and stalls
+	private int watchdogMs = 2000; // no move for this long counts as stalled
+
+	// the defaults - the original ten lane race
+	public SimulationConfig() {
+	}
+
+	// Build a config from --key=value arguments. --config=file loads a properties file
+	// first. Arguments that do not start with -- are returned in positional, if given
+	public static SimulationConfig fromArgs(String[] args, List<String> positional) throws IOException {
+		SimulationConfig config = new SimulationConfig();
+		List<String[]> overrides = new ArrayList<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--")) {
+				if (positional == null)
+					throw new IllegalArgumentException("unexpected argument: " + arg);
+				positional.add(arg);
+				continue;
+			}
+			int eq = arg.indexOf('=');
+			if (eq < 0)
+				throw new IllegalArgumentException("expected --key=value: " + arg);
+			String key = arg.substring(2, eq);
+			String value = arg.substring(eq + 1);
+			if (key.equals("config")) {
+				Properties properties = new Properties();
+				try (Reader in = new FileReader(value)) {
+					properties.load(in);
+				}
+				for (String name : properties.stringPropertyNames())
+					config.set(name, properties.getProperty(name));
+			} else {
+				overrides.add(new String[] { key, value });
+			}
+		}
+		for (String[] override : overrides)
+			config.set(override[0], override[1]);
+		return config.validate();
+	}
+
+	public static SimulationConfig fromArgs(String[] args) throws IOException {
+		return fromArgs(args, null);
+	}
+
+	// set one option by name, as it appears on the command line or in a properties file
+	public SimulationConfig set(String key, String value) {
+		value = value.trim();
+		switch (key) {
+		case "teams":
+			numTeams = Integer.parseInt(value);
+			break;
+		case "teamSize":
+			teamSize = Integer.parseInt(value);
+			break;
+		case "gridX":
+			gridX = Integer.parseInt(value);
+			break;
+		case "gridY":
+			gridY = Integer.parseInt(value);
+			break;
+		case "laneSpacing":
+			laneSpacing = Integer.parseInt(value);
+			break;
+		case "entrances":
+			entrances = Integer.parseInt(value);
+			break;
+		case "locking":
+			lockingMode = StadiumGrid.LockingMode.valueOf(value.toUpperCase());
+			break;
+		case "backend":
+			backend = StadiumGrid.GridBackend.valueOf(value.toUpperCase());
+			break;
+		case "mode":
+			executionMode = ExecutionMode.parse(value);
+			break;
+		case "races":
+			races = Integer.parseInt(value);
+			break;
+		case "heatSize":
+			heatSize = Integer.parseInt(value);
+			break;
+		case "log":
+			logLevel = RaceLog.Level.parse(value);
+			break;
+		case "speeds":
+			speeds = parseInts(value);
+			break;
+		case "metrics":
+			metrics = Boolean.parseBoolean(value);
+			break;
+		case "metricsDump":
+			metricsDump = Integer.parseInt(value);
+			metrics |= metricsDump > 0; // asking for dumps turns metrics on
+			break;
+		case "pathPlanning":
+			pathPlanning = Boolean.parseBoolean(value);
+			break;
+		case "watchdog":
+			watchdog = GridWatchdog.Action.parse(value);
+			break;
+		case "watchdogMs":
+			watchdogMs = Integer.parseInt(value);
+			break;
+		case "seed":
+			seed = Long.parseLong(value);
+			break;
+		case "journal":
+			journal = value.isEmpty() ? null : value;
+			break;
+		default:
+			throw new IllegalArgumentException("unknown option: " + key);
+		}
+		return this;
+	}
+
+	// comma separated ints, empty for none
+	private static int[] parseInts(String value) {
+		if (value.isEmpty())
+			return null;
+		String[] parts = value.split(",");
+		int[] ints = new int[parts.length];
+		for (int i = 0; i < parts.length; i++)
+			ints[i] = Integer.parseInt(parts[i].trim());
+		return ints;
+	}
+
+	// check the sizes make a runnable race, widening the grid to fit every lane
+	public SimulationConfig validate() {
+		if (numTeams < 1)
+			throw new IllegalArgumentException("teams must be at least 1: " + numTeams);
+		if (teamSize < 1 || teamSize > Swimmer.SwimStroke.values().length)
+			throw new IllegalArgumentException(
+					"teamSize must be 1 to " + Swimmer.SwimStroke.values().length + ": " + teamSize);
+		if (laneSpacing < 3)
+			throw new IllegalArgumentException("laneSpacing must be at least 3: " + laneSpacing);
+		if (entrances < 1 || entrances > maxEntrances)
+			throw new IllegalArgumentException("entrances must be 1 to " + maxEntrances + ": " + entrances);
+		if (gridY < minGridY)
+			throw new IllegalArgumentException("gridY must be at least " + minGridY + ": " + gridY);
+		if (metricsDump < 0)
+			throw new IllegalArgumentException("metricsDump must be at least 0: " + metricsDump);
+		if (races < 1)
+			throw new IllegalArgumentException("races must be at least 1: " + races);
+		if (speeds != null && speeds.length != getNumSwimmers())
+			throw new IllegalArgumentException(
+					"speeds needs one speed per swimmer (" + getNumSwimmers() + "), got " + speeds.length);
+		if (speeds != null)
+			for (int speed : speeds)
+				if (speed < 1)
+					throw new IllegalArgumentException("speeds must be at least 1: " + speed);
+		if (watchdogMs < 1)
+			throw new IllegalArgumentException("watchdogMs must be at least 1: " + watchdogMs);
+		if (heatSize < 1)
+			throw new IllegalArgumentException("heatSize must be at least 1: " + heatSize);
+		return this;
+	}
+
+	// a separate config to change, e.g. one heat of a tournament
+	public SimulationConfig copy() {
+		try {
+			return (SimulationConfig) super.clone(); // every field is a value, or an array that is never changed in place
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	// setters, for building a config in code
+	public SimulationConfig setNumTeams(int numTeams) {
+		this.numTeams = numTeams;
+		return this;
+	}
+
+	public SimulationConfig setTeamSize(int teamSize) {
+		this.teamSize = teamSize;
+		return this;
+	}
+
+	public SimulationConfig setGrid(int gridX, int gridY) {
+		this.gridX = gridX;
+		this.gridY = gridY;
+		return this;
+	}
+
+	public SimulationConfig setEntrances(int entrances) {
+		this.entrances = entrances;
+		return this;
+	}
+
+	public SimulationConfig setLockingMode(StadiumGrid.LockingMode lockingMode) {
+		this.lockingMode = lockingMode;
+		return this;
+	}
+
+	public SimulationConfig setBackend(StadiumGrid.GridBackend backend) {
+		this.backend = backend;
+		return this;
+	}
+
+	public SimulationConfig setExecutionMode(ExecutionMode executionMode) {
+		this.executionMode = executionMode;
+		return this;
+	}
+
+	public SimulationConfig setRaces(int races) {
+		this.races = races;
+		return this;
+	}
+
+	public SimulationConfig setHeatSize(int heatSize) {
+		this.heatSize = heatSize;
+		return this;
+	}
+
+	public SimulationConfig setLogLevel(RaceLog.Level logLevel) {
+		this.logLevel = logLevel;
+		return this;
+	}
+
+	public SimulationConfig setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public SimulationConfig setSpeeds(int[] speeds) {
+		this.speeds = speeds;
+		return this;
+	}
+
+	public SimulationConfig setMetrics(boolean metrics, int dumpSeconds) {
+		this.metrics = metrics;
+		this.metricsDump = dumpSeconds;
+		return this;
+	}
+
+	public SimulationConfig setPathPlanning(boolean pathPlanning) {
+		this.pathPlanning = pathPlanning;
+		return this;
+	}
+
+	public SimulationConfig setWatchdog(GridWatchdog.Action watchdog, int thresholdMs) {
+		this.watchdog = watchdog;
+		this.watchdogMs = thresholdMs;
+		return this;
+	}
+
+	public SimulationConfig setJournal(String journal) {
+		this.journal = journal;
+		return this;
+	}
+
+	// getters
+	public int getNumTeams() {
+		return numTeams;
+	}
+
+	public int getTeamSize() {
+		return teamSize;
+	}
+
+	public int getNumSwimmers() {
+		return numTeams * teamSize;
+	}
+
+	// at least wide enough for a lane, and its exit column, per team
+	public int getGridX() {
+		return Math.max(gridX, numTeams * laneSpacing);
+	}
+
+	public int getGridY() {
+		return gridY;
+	}
+
+	public int getLaneSpacing() {
+		return laneSpacing;
+	}
+
+	public int getEntrances() {
+		return entrances;
+	}
+
+	public StadiumGrid.LockingMode getLockingMode() {
+		return lockingMode;
+	}
+
+	public StadiumGrid.GridBackend getBackend() {
+		return backend;
+	}
+
+	public ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	public int getRaces() {
+		return races;
+	}
+
+	public int getHeatSize() {
+		return heatSize;
+	}
+
+	public RaceLog.Level getLogLevel() {
+		return logLevel;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	// the seed for one race of a run - race numbers start at 1
+	public long getRaceSeed(int race) {
+		return RaceRandom.raceSeed(seed, race);
+	}
+
+	public int[] getSpeeds() {
+		return speeds;
+	}
+
+	public boolean isMetrics() {
+		return metrics;
+	}
+
+	public int getMetricsDump() {
+		return metricsDump;
+	}
+
+	public boolean isPathPlanning() {
+		return pathPlanning;
+	}
+
+	public GridWatchdog.Action getWatchdog() {
+		return watchdog;
+	}
+
+	public int getWatchdogMs() {
+		return watchdogMs;
+	}
+
+	public String getJournal() {
+		return journal;
+	}
+
+	@Override
+	public String toString() {
+		return "teams=" + numTeams + " teamSize=" + teamSize + " gridX=" + getGridX() + " gridY=" + gridY + " laneSpacing="
+				+ laneSpacing + " entrances=" + entrances + " locking=" + lockingMode + " mode=" + executionMode
+				+ " seed=" + seed + " log=" + logLevel + (journal == null ? "" : " journal=" + journal)
+				+ (speeds == null ? "" : " speeds=" + speeds.length) + (metrics ? " metricsDump=" + metricsDump : "")
+				+ (backend == StadiumGrid.GridBackend.OBJECTS ? "" : " backend=" + backend)
+				+ (pathPlanning ? " pathPlanning=true" : "")
+				+ (watchdog == GridWatchdog.Action.OFF ? "" : " watchdog=" + watchdog + " watchdogMs=" + watchdogMs);
+	}
+}
@@ -4,52 +4,118 @@
 
 package medleySimulation;
 
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 //This class represents the club as a grid of GridBlocks
 public class StadiumGrid {
-	private GridBlock[][] Blocks;
+	// how a swimmer waits for a block that is occupied
+	public enum LockingMode {
+		GLOBAL, // one monitor for the whole grid, every move wakes every waiter
+		PER_BLOCK, // wait on the target block only, a release wakes its own waiters
+		SHARDED // one lock per lane of the pool and per region of the deck, see moveTo
+	}
+
+	// where block owners are kept
+	public enum GridBackend {
+		OBJECTS, // a GridBlock object for every block, made up front
+		FLAT // one int per block in a FlatStadiumGrid - GridBlocks only for blocks in use
+	}
+
+	static final int deckShardLanes = 4; // lanes' width of deck in one SHARDED deck region
+
+	private final LockingMode lockingMode;
+	private GridBlock[][] Blocks; // OBJECTS only - null otherwise
+	private final FlatStadiumGrid flat; // FLAT only - null otherwise
 	private final int x; // maximum x value
 	private final int y; // maximum y value
-	public static int start_y; // where the starting blocks are
-	private boolean[] canDive = new boolean[10];
-	private GridBlock entrance; // hard coded entrance
-	public static CyclicBarrier racebarrier = new CyclicBarrier(10);
+	private final int laneSpacing; // starting blocks are at x % laneSpacing == 1
+	private final int start_y; // where the starting blocks are
+	private GridBlock entrance; // hard coded entrance - the first of the gate's entrances
+	private final AdmissionGate gate; // entrances stacked up the left hand side of the deck
+	public final CyclicBarrier racebarrier; // one party per team
 	private GridBlock startingBlocks[]; // hard coded starting blocks
-	private final static int minX = 5;// minimum x dimension
-	private final static int minY = 5;// minimum y dimension
-	public boolean[] inside = new boolean[40];
+	public boolean[] inside; // one per swimmer
+	private final LocationSnapshot snapshot; // where everyone is, for the view
+	private RaceJournal journal; // dives and handoffs are journalled here, if the race is - may be null
+	private final int poolShards; // SHARDED: one shard per lane column of the pool, then the deck regions
+	private final ReentrantLock[] shardLocks; // SHARDED only - null otherwise
+	private final Condition[] shardFreed; // a block in the shard was released
+	private final DeckPathPlanner planner; // routes across the deck - null to move greedily
+	private final GridWatchdog watchdog; // deadlock and stall detection - null when off
+	private volatile Executor asyncExecutor = ForkJoinPool.commonPool(); // finishes moveTowardsAsync
 
-	public boolean retrieveDive(int team) {
-		return canDive[team];
+	StadiumGrid(int x, int y, int nTeams, FinishCounter c)
+			throws InterruptedException {
+		this(x, y, nTeams, c, LockingMode.PER_BLOCK);
 	}
 
-	public void setDive(int team, boolean flag) {
-		canDive[team] = flag;
+	StadiumGrid(int x, int y, int nTeams, FinishCounter c, LockingMode mode)
+			throws InterruptedException {
+		this(new SimulationConfig().setNumTeams(nTeams).setGrid(x, y).setLockingMode(mode), c);
 	}
 
-	StadiumGrid(int x, int y, int nTeams, FinishCounter c)
-			throws InterruptedException {
-		if (x < minX)
-			x = minX; // minimum x
-		if (y < minY)
-			y = minY; // minimum x
-		this.x = x;
-		this.y = y;
+	// every size in the stadium comes from the config
+	StadiumGrid(SimulationConfig config, FinishCounter c) throws InterruptedException {
+		config.validate();
+		lockingMode = config.getLockingMode();
+		this.x = config.getGridX();
+		this.y = config.getGridY();
+		laneSpacing = config.getLaneSpacing();
 		start_y = y - 20; // start row hard-coded
-		Blocks = new GridBlock[x][y]; // set up the array grid
-		startingBlocks = new GridBlock[nTeams];
+		flat = config.getBackend() == GridBackend.FLAT ? new FlatStadiumGrid(config) : null;
+		if (flat == null)
+			Blocks = new GridBlock[x][y]; // set up the array grid
+		startingBlocks = new GridBlock[config.getNumTeams()];
+		racebarrier = new CyclicBarrier(config.getNumTeams());
+		inside = new boolean[config.getNumSwimmers()];
+		snapshot = new LocationSnapshot(config.getNumSwimmers());
 		this.initGrid();
-		entrance = Blocks[0][y - 5];
+		poolShards = (x + laneSpacing - 1) / laneSpacing;
+		if (lockingMode == LockingMode.SHARDED) {
+			int shards = poolShards + (poolShards + deckShardLanes - 1) / deckShardLanes;
+			shardLocks = new ReentrantLock[shards];
+			shardFreed = new Condition[shards];
+			for (int s = 0; s < shards; s++) {
+				shardLocks[s] = new ReentrantLock();
+				shardFreed[s] = shardLocks[s].newCondition();
+			}
+		} else {
+			shardLocks = null;
+			shardFreed = null;
+		}
+		GridBlock[] entrances = new GridBlock[config.getEntrances()];
+		for (int k = 0; k < entrances.length; k++)
+			entrances[k] = block(0, y - 5 - k);
+		entrance = entrances[0];
+		gate = new AdmissionGate(entrances, config.getNumTeams(), config.getTeamSize());
+		planner = config.isPathPlanning() ? new DeckPathPlanner(this, config.getNumSwimmers(), config.getTeamSize(),
+				entrances.length)
+				: null;
+		watchdog = config.getWatchdog() == GridWatchdog.Action.OFF ? null
+				: new GridWatchdog(this, config.getNumSwimmers(), config.getWatchdog(), config.getWatchdogMs());
 	}
 
-	// initialise the grid, creating all the GridBlocks, marking the starting blocks
+	// initialise the grid, creating all the GridBlocks, marking the starting blocks. A flat
+	// grid makes its blocks as they are used - only the starting blocks are looked up
 	private void initGrid() throws InterruptedException {
+		if (flat != null) {
+			for (int team = 0; team < startingBlocks.length; team++)
+				startingBlocks[team] = flat.block(team * laneSpacing + 1, start_y);
+			return;
+		}
 		int startBIndex = 0;
 		for (int i = 0; i < x; i++) {
 			for (int j = 0; j < y; j++) {
 				boolean start_block = false;
-				if ((i % 5 == 1) && (j == start_y)) {
+				if ((i % laneSpacing == 1) && (j == start_y) && (startBIndex < startingBlocks.length)) {
 					start_block = true;
 				}
 				Blocks[i][j] = new GridBlock(i, j, start_block);
@@ -61,6 +127,26 @@ public class StadiumGrid {
 		}
 	}
 
+	// Clear the stadium for another race in place - every block free, nobody inside,
+	// the barrier, entrances and snapshot back to the start. Nothing is allocated, so
+	// back to back races reuse the same grid. Only call it between races
+	public void reset() {
+		if (flat != null)
+			flat.reset();
+		else
+			for (GridBlock[] column : Blocks)
+				for (GridBlock block : column)
+					block.reset();
+		Arrays.fill(inside, false);
+		racebarrier.reset();
+		gate.reset();
+		snapshot.reset();
+		if (planner != null)
+			planner.reset();
+		if (watchdog != null)
+			watchdog.reset();
+	}
+
 	// getters
 	public int getMaxX() {
 		return x;
@@ -70,6 +156,38 @@ public class StadiumGrid {
 		return y;
 	}
 
+	// row of the starting blocks - the pool is the rows above it
+	public int getStartY() {
+		return start_y;
+	}
+
+	public int getLaneSpacing() {
+		return laneSpacing;
+	}
+
+	// packed positions of everyone in the stadium
+	public LocationSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	// the race's journal, for its swimmers - set before anyone enters. Claims are not
+	// journalled here: the PeopleLocation records every block a person moves onto
+	public void setJournal(RaceJournal journal) {
+		this.journal = journal;
+	}
+
+	public RaceJournal getJournal() {
+		return journal;
+	}
+
+	public LockingMode getLockingMode() {
+		return lockingMode;
+	}
+
+	public GridBackend getBackend() {
+		return flat != null ? GridBackend.FLAT : GridBackend.OBJECTS;
+	}
+
 	public GridBlock whereEntrance() {
 		return entrance;
 	}
@@ -86,14 +204,38 @@ public class StadiumGrid {
 		return inGrid(i, j);
 	}
 
-	// a person enters the stadium
+	// a person enters the stadium - waits for their turn at their entrance
 	public GridBlock enterStadium(PeopleLocation myLocation) throws InterruptedException {
-		// while ((entrance.get(myLocation.getID()))) {
-		// } // wait at entrace until entrance is free - spinning, not good
-		myLocation.setLocation(entrance);
+		GridBlock door = gate.admit(myLocation.getID());
+		door.acquire(myLocation.getID()); // nobody else can be on it, but it must be owned to be released
+		if (watchdog != null)
+			watchdog.moved(myLocation.getID());
+		myLocation.setLocation(door);
 		myLocation.setInStadium(true);
-		return entrance;
+		return door;
+	}
+
+	// enter the stadium if it is this person's turn right now and their entrance is free,
+	// otherwise null - they keep their ticket, and try again when the entrance is released
+	public GridBlock tryEnterStadium(PeopleLocation myLocation) throws InterruptedException {
+		GridBlock door = gate.tryAdmit(myLocation.getID());
+		if (door == null || !door.get(myLocation.getID()))
+			return null;
+		if (watchdog != null)
+			watchdog.moved(myLocation.getID());
+		myLocation.setLocation(door);
+		myLocation.setInStadium(true);
+		return door;
+	}
 
+	// a person has moved off the entrance they came in by - admit the next one.
+	// Returns the ID of the person admitted, -1 if none
+	public int leaveEntrance(PeopleLocation myLocation) {
+		return gate.leave(myLocation.getID());
+	}
+
+	public AdmissionGate getGate() {
+		return gate;
 	}
 
 	// returns starting block for a team (the lane)
@@ -102,9 +244,101 @@ public class StadiumGrid {
 	}
 
 	// Make a one block move in a direction
-	public synchronized GridBlock moveTowards(GridBlock currentBlock, int xDir, int yDir, PeopleLocation myLocation)
+	public GridBlock moveTowards(GridBlock currentBlock, int xDir, int yDir, PeopleLocation myLocation)
 			throws InterruptedException { // try to move in
+		GridBlock newBlock = nextBlock(currentBlock, xDir, yDir);
+		if (newBlock == currentBlock) // not moving, or invalid move
+			return currentBlock;
+		return waitingMove(currentBlock, newBlock, myLocation, RaceMetrics.moveTowardsWait, true);
+	}
+
+	// Make a one block move in a direction if the block is free right now - null if it is
+	// taken, and the caller is still on currentBlock to back off or pick another block
+	public GridBlock tryMoveTowards(GridBlock currentBlock, int xDir, int yDir, PeopleLocation myLocation)
+			throws InterruptedException {
+		return moveTowards(currentBlock, xDir, yDir, myLocation, 0, TimeUnit.NANOSECONDS);
+	}
+
+	// Make a one block move in a direction, waiting at most timeout for the block - null if
+	// it was still taken, and the caller is still on currentBlock
+	public GridBlock moveTowards(GridBlock currentBlock, int xDir, int yDir, PeopleLocation myLocation, long timeout,
+			TimeUnit unit) throws InterruptedException {
+		GridBlock newBlock = nextBlock(currentBlock, xDir, yDir);
+		if (newBlock == currentBlock) // not moving, or invalid move
+			return currentBlock;
+		return moveTo(currentBlock, newBlock, myLocation, RaceMetrics.moveTowardsWait,
+				Math.max(unit.toNanos(timeout), 0));
+	}
+
+	// Make a one block move in a direction without waiting on a thread: the future completes
+	// with the new block once it is won, on the async executor if it had to wait. The caller
+	// must not move the person again until it completes
+	public CompletableFuture<GridBlock> moveTowardsAsync(GridBlock currentBlock, int xDir, int yDir,
+			PeopleLocation myLocation) throws InterruptedException {
+		GridBlock newBlock = nextBlock(currentBlock, xDir, yDir);
+		if (newBlock == currentBlock)
+			return CompletableFuture.completedFuture(currentBlock);
+		GridBlock moved = moveTo(currentBlock, newBlock, myLocation, RaceMetrics.moveTowardsWait, 0);
+		if (moved != null)
+			return CompletableFuture.completedFuture(moved);
+		AsyncMove move = new AsyncMove(currentBlock, newBlock, myLocation);
+		newBlock.whenFree(move);
+		return move.future;
+	}
+
+	// where async moves that had to wait are finished - the common pool unless set
+	public void setAsyncExecutor(Executor executor) {
+		asyncExecutor = executor;
+	}
+
+	// levitate to a specific block -
+	public GridBlock jumpTo(GridBlock currentBlock, int x, int y, PeopleLocation myLocation)
+			throws InterruptedException {
+		// restrict i and j to grid
+		if (!inside(x, y)) {
+			RaceLog.warn(RaceLog.Event.INVALID_MOVE, myLocation.getID(), x, y);
+			// Invalid move to outside - ignore
+			return currentBlock;
+		}
+
+		GridBlock newBlock = whichBlock(x, y);
+		if (newBlock == currentBlock)
+			return currentBlock;
+		return waitingMove(currentBlock, newBlock, myLocation, RaceMetrics.jumpToWait, false);
+	}
+
+	// Make a one block move towards a block, around congestion on the deck if there is a
+	// path planner - otherwise the same as moveTowards
+	public GridBlock routeTowards(GridBlock currentBlock, int xTarget, int yTarget, PeopleLocation myLocation)
+			throws InterruptedException {
+		GridBlock newBlock = nextStep(currentBlock, xTarget, yTarget);
+		if (newBlock == currentBlock)
+			return currentBlock;
+		return waitingMove(currentBlock, newBlock, myLocation, RaceMetrics.moveTowardsWait, true);
+	}
+
+	// the block routeTowards would go to - the planner's step on the deck, else nextBlock
+	public GridBlock nextStep(GridBlock currentBlock, int xTarget, int yTarget) {
+		if (planner != null) {
+			GridBlock step = planner.nextStep(currentBlock, xTarget, yTarget);
+			if (step != null)
+				return step;
+		}
+		return nextBlock(currentBlock, xTarget, yTarget);
+	}
+
+	public DeckPathPlanner getPlanner() {
+		return planner;
+	}
 
+	// null unless the config turns the watchdog on - start it when the race starts
+	public GridWatchdog getWatchdog() {
+		return watchdog;
+	}
+
+	// the block a one block move in a direction would go to - currentBlock if not
+	// moving or the move is invalid
+	public GridBlock nextBlock(GridBlock currentBlock, int xDir, int yDir) {
 		int c_x = currentBlock.getX();
 		int c_y = currentBlock.getY();
 
@@ -116,60 +350,290 @@ public class StadiumGrid {
 		}
 		// restrict i and j to grid
 		if (!inside(add_x + c_x, add_y + c_y)) {
-			System.out.println("Invalid move");
+			RaceLog.warn(RaceLog.Event.INVALID_MOVE, currentBlock.owner(), add_x + c_x, add_y + c_y);
 			// Invalid move to outside - ignore
 			return currentBlock;
 		}
 
-		GridBlock newBlock;
 		if (add_x != 0)
-			newBlock = whichBlock(add_x + c_x, c_y); // try moving x only first
-		else
-			newBlock = whichBlock(add_x + c_x, add_y + c_y);// try diagonal or y
+			return whichBlock(add_x + c_x, c_y); // try moving x only first
+		return whichBlock(add_x + c_x, add_y + c_y);// try diagonal or y
+	}
 
-		while ((!newBlock.get(myLocation.getID()))) {
-			this.wait();
-		} // wait until block is free - but spinning is bad
-		myLocation.setLocation(newBlock);
-		currentBlock.release(); // must release current block
-		this.notifyAll();
+	// claim newBlock, then give up currentBlock, however long it takes. With a watchdog the
+	// wait is registered and done in slices, and between slices a swimmer the watchdog has
+	// picked to break a deadlock steps aside instead, if mayStepAside - so callers must
+	// loop until they get where they are going, as moveTowards callers do
+	private GridBlock waitingMove(GridBlock currentBlock, GridBlock newBlock, PeopleLocation myLocation,
+			LatencyHistogram waitTime, boolean mayStepAside) throws InterruptedException {
+		if (watchdog == null)
+			return moveTo(currentBlock, newBlock, myLocation, waitTime, -1);
+		int id = myLocation.getID();
+		GridBlock moved = moveTo(currentBlock, newBlock, myLocation, null, 0); // no wait, nothing to time
+		if (moved != null)
+			return moved;
+		long waitStart = RaceMetrics.enabled ? System.nanoTime() : 0;
+		watchdog.waiting(id, newBlock, mayStepAside);
+		try {
+			while (true) {
+				moved = moveTo(currentBlock, newBlock, myLocation, null, watchdog.sliceNanos());
+				if (moved == null && mayStepAside && watchdog.shouldStepAside(id))
+					moved = stepAside(currentBlock, newBlock, myLocation);
+				if (moved != null)
+					return moved;
+			}
+		} finally {
+			watchdog.waiting(id, null, false);
+			if (waitStart != 0)
+				waitTime.record(System.nanoTime() - waitStart);
+		}
+	}
+
+	// move to any free block next to currentBlock except the one wanted and starting
+	// blocks, to let the others in a deadlock through - null if there is none
+	private GridBlock stepAside(GridBlock currentBlock, GridBlock wanted, PeopleLocation myLocation)
+			throws InterruptedException {
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				int i = currentBlock.getX() + dx;
+				int j = currentBlock.getY() + dy;
+				if ((dx == 0 && dy == 0) || !inGrid(i, j))
+					continue;
+				GridBlock aside = block(i, j);
+				if (aside == wanted || aside.isStart() || !aside.get(myLocation.getID()))
+					continue;
+				completeMove(currentBlock, aside, myLocation);
+				watchdog.yielded();
+				RaceLog.warn(RaceLog.Event.STEPPED_ASIDE, myLocation.getID(), i, j);
+				return aside;
+			}
+		}
+		return null;
+	}
+
+	// claim newBlock, then give up currentBlock. Waits at most timeoutNanos for newBlock -
+	// negative waits for ever, 0 not at all - and returns null if it timed out, still on
+	// currentBlock. Time spent waiting goes into waitTime, if any, when RaceMetrics are on
+	private GridBlock moveTo(GridBlock currentBlock, GridBlock newBlock, PeopleLocation myLocation,
+			LatencyHistogram waitTime, long timeoutNanos) throws InterruptedException {
+		boolean timed = RaceMetrics.enabled;
+		if (lockingMode == LockingMode.GLOBAL) {
+			long deadline = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+			synchronized (this) {
+				boolean got = newBlock.get(myLocation.getID());
+				long waitStart = !got && timed ? System.nanoTime() : 0;
+				while (!got) {
+					if (timeoutNanos < 0) {
+						this.wait();
+					} else {
+						long remaining = deadline - System.nanoTime();
+						if (timeoutNanos == 0 || remaining <= 0)
+							return null;
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+					got = newBlock.get(myLocation.getID());
+					if (timed)
+						RaceMetrics.wokeUp(got);
+				} // every move wakes every waiting thread
+				if (waitStart != 0 && waitTime != null)
+					waitTime.record(System.nanoTime() - waitStart);
+				finishMove(currentBlock, newBlock, myLocation);
+				this.notifyAll();
+			}
+			return newBlock;
+		}
+		if (lockingMode == LockingMode.SHARDED)
+			return moveToSharded(currentBlock, newBlock, myLocation, waitTime, timed, timeoutNanos);
+		// PER_BLOCK: only hold (and wait on) one block at a time, so there is no lock
+		// ordering to get wrong
+		long waitStart = timed && !newBlock.get(myLocation.getID()) ? System.nanoTime() : 0;
+		boolean got = newBlock.acquire(myLocation.getID(), timeoutNanos); // at once if the get above won it
+		if (waitStart != 0 && waitTime != null)
+			waitTime.record(System.nanoTime() - waitStart);
+		if (!got)
+			return null;
+		finishMove(currentBlock, newBlock, myLocation); // wakes only threads waiting for currentBlock
 		return newBlock;
+	}
 
+	// SHARDED: the pool rows of a lane are one shard each - swimmers stay in their lane
+	// there - and the deck, from the start row down, is split into wider regions
+	int shardOf(GridBlock block) {
+		int lane = block.getX() / laneSpacing;
+		if (block.getY() < start_y)
+			return lane;
+		return poolShards + lane / deckShardLanes;
 	}
 
-	// levitate to a specific block -
-	public synchronized GridBlock jumpTo(GridBlock currentBlock, int x, int y, PeopleLocation myLocation)
-			throws InterruptedException {
-		// restrict i and j to grid
-		if (!inside(x, y)) {
-			System.out.println("Invalid move");
-			// Invalid move to outside - ignore
-			return currentBlock;
+	// SHARDED: wait for newBlock under its own shard's lock only. A move inside one shard
+	// then finishes under that lock, like GLOBAL on a smaller grid. A move across shards
+	// already owns newBlock, so it never waits again - see completeMove
+	private GridBlock moveToSharded(GridBlock currentBlock, GridBlock newBlock, PeopleLocation myLocation,
+			LatencyHistogram waitTime, boolean timed, long timeoutNanos) throws InterruptedException {
+		int from = shardOf(currentBlock);
+		int to = shardOf(newBlock);
+		long waitStart = 0;
+		boolean got = false;
+		boolean moved = false;
+		long remaining = timeoutNanos;
+		shardLocks[to].lockInterruptibly();
+		try {
+			got = newBlock.get(myLocation.getID());
+			if (!got && timed)
+				waitStart = System.nanoTime();
+			while (!got) {
+				if (timeoutNanos < 0) {
+					shardFreed[to].await();
+				} else {
+					if (remaining <= 0)
+						break;
+					remaining = shardFreed[to].awaitNanos(remaining);
+				}
+				got = newBlock.get(myLocation.getID());
+				if (timed)
+					RaceMetrics.wokeUp(got);
+			}
+			if (got && from == to) {
+				finishMove(currentBlock, newBlock, myLocation);
+				shardFreed[to].signalAll();
+				moved = true;
+			}
+		} finally {
+			shardLocks[to].unlock();
+		}
+		if (waitStart != 0 && waitTime != null)
+			waitTime.record(System.nanoTime() - waitStart);
+		if (moved)
+			return newBlock;
+		if (!got)
+			return null; // timed out
+		completeMove(currentBlock, newBlock, myLocation);
+		return newBlock;
+	}
+
+	// newBlock is already owned - record the move and give up currentBlock, waking whoever
+	// the locking mode says waits for it. SHARDED takes both shard locks, lowest shard first
+	// so movers crossing a boundary in opposite directions cannot deadlock
+	private void completeMove(GridBlock currentBlock, GridBlock newBlock, PeopleLocation myLocation) {
+		if (lockingMode == LockingMode.GLOBAL) {
+			synchronized (this) {
+				finishMove(currentBlock, newBlock, myLocation);
+				this.notifyAll();
+			}
+		} else if (lockingMode == LockingMode.SHARDED) {
+			int from = shardOf(currentBlock);
+			int to = shardOf(newBlock);
+			ReentrantLock first = shardLocks[Math.min(from, to)];
+			ReentrantLock second = shardLocks[Math.max(from, to)];
+			first.lock();
+			second.lock();
+			try {
+				finishMove(currentBlock, newBlock, myLocation);
+				shardFreed[from].signalAll(); // only the old shard has waiters for currentBlock
+			} finally {
+				second.unlock();
+				first.unlock();
+			}
+		} else {
+			finishMove(currentBlock, newBlock, myLocation);
+		}
+	}
+
+	// give back a block that was claimed but not moved onto, waking whoever the locking
+	// mode says waits for it, as completeMove does for the block moved off
+	void giveBack(GridBlock block) {
+		if (lockingMode == LockingMode.GLOBAL) {
+			synchronized (this) {
+				block.release();
+				this.notifyAll();
+			}
+		} else if (lockingMode == LockingMode.SHARDED) {
+			ReentrantLock lock = shardLocks[shardOf(block)];
+			lock.lock();
+			try {
+				block.release();
+				shardFreed[shardOf(block)].signalAll();
+			} finally {
+				lock.unlock();
+			}
+		} else {
+			block.release();
 		}
+	}
 
-		GridBlock newBlock = whichBlock(x, y);// try diagonal or y
-		// sychronized(newBlock)
-		while ((!newBlock.get(myLocation.getID()))) {
-			// try{
-			this.wait();
-			// }
-		} // wait until block is free - but spinning, not good
-			// }
+	// newBlock is owned - record the move and give up currentBlock
+	private void finishMove(GridBlock currentBlock, GridBlock newBlock, PeopleLocation myLocation) {
+		if (RaceMetrics.enabled)
+			RaceMetrics.moved();
+		if (watchdog != null)
+			watchdog.moved(myLocation.getID());
 		myLocation.setLocation(newBlock);
-		currentBlock.release(); // must release current block
+		currentBlock.release();
+	}
 
-		// newBlock.notifyAll();
-		this.notifyAll();
-		return newBlock;
+	// A move waiting for its block without a thread: tried each time the block is released,
+	// on the async executor, until it wins the block. The move and a cancel race for one
+	// state, so a cancel that succeeds always leaves the person on their current block, and
+	// once the move has won, cancel returns false and the future completes with the new block
+	private final class AsyncMove implements Runnable {
+		static final int waiting = 0, moved = 1, cancelled = 2;
+
+		final GridBlock currentBlock;
+		final GridBlock newBlock;
+		final PeopleLocation myLocation;
+		final AtomicInteger state = new AtomicInteger(waiting);
+		final CompletableFuture<GridBlock> future = new CompletableFuture<GridBlock>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				return state.compareAndSet(waiting, cancelled) && super.cancel(mayInterruptIfRunning);
+			}
+		};
+
+		AsyncMove(GridBlock currentBlock, GridBlock newBlock, PeopleLocation myLocation) {
+			this.currentBlock = currentBlock;
+			this.newBlock = newBlock;
+			this.myLocation = myLocation;
+		}
+
+		// the block was released - try for it off the releasing thread
+		@Override
+		public void run() {
+			if (state.get() == waiting)
+				asyncExecutor.execute(this::attempt);
+		}
+
+		// one try at a time, so a block won just as the move is cancelled is given back once
+		synchronized void attempt() {
+			if (state.get() != waiting)
+				return; // a try queued before the block was won, or cancelled
+			try {
+				if (!newBlock.get(myLocation.getID())) {
+					newBlock.whenFree(this); // lost it again - wait for the next release
+					return;
+				}
+				if (!state.compareAndSet(waiting, moved)) {
+					giveBack(newBlock); // cancelled while we won it - stay where we are
+					return;
+				}
+				completeMove(currentBlock, newBlock, myLocation);
+				future.complete(newBlock);
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
 
+	// the block at a grid position, from whichever backend holds them - no checking
+	private GridBlock block(int i, int j) {
+		return flat != null ? flat.block(i, j) : Blocks[i][j];
 	}
 
 	// x and y actually correspond to the grid pos, but this is for generality.
 	public GridBlock whichBlock(int xPos, int yPos) {
 		if (inGrid(xPos, yPos)) {
-			return Blocks[xPos][yPos];
+			return block(xPos, yPos);
 		}
-		System.out.println("block " + xPos + " " + yPos + "  not found");
+		RaceLog.warn(RaceLog.Event.BLOCK_NOT_FOUND, -1, xPos, yPos);
 		return null;
 	}
 }
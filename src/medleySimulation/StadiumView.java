@@ -1,13 +1,15 @@
 package medleySimulation;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
-import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.Toolkit;
-import java.awt.AlphaComposite;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import javax.swing.ImageIcon;
 import javax.swing.JPanel;
 
 public class StadiumView extends JPanel implements Runnable {
@@ -34,18 +36,40 @@ public class StadiumView extends JPanel implements Runnable {
     private final Color concrete = new Color(255, 255, 255, 100); // More translucent concrete color
     private final Image backgroundImage; // Background image
     private final float overlayAlpha = 0.5f; // Alpha value for the dark overlay
+    private static final BasicStroke laneStroke = new BasicStroke(3);
     StadiumGrid grid; // Shared grid
 
+    // Background, pool, lane lines and starting blocks never change, so they are drawn
+    // once into this image and only redrawn when the panel is resized
+    private BufferedImage staticLayer;
+
+    // Where each person was last drawn, so run() can repaint only the blocks that changed
+    private final int[] drawnX;
+    private final int[] drawnY;
+
+    // Positions are read from the grid's packed snapshot into these buffers - one for
+    // painting on the event thread, one for run() - so no frame locks or allocates
+    private final LocationSnapshot snapshot;
+    private final int[] paintPositions;
+    private final int[] framePositions;
+
     StadiumView(PeopleLocation[] people, StadiumGrid grid) { // Constructor
         this.pplLocations = people;
         numPeople = people.length;
         this.grid = grid;
         this.maxY = grid.getMaxY();
         this.maxX = grid.getMaxX();
-        this.endPool = StadiumGrid.start_y;
-
-        // Load the background image
-        backgroundImage = Toolkit.getDefaultToolkit().getImage("src/medleySimulation/cover3.jpg");
+        this.endPool = grid.getStartY();
+        snapshot = grid.getSnapshot();
+        paintPositions = new int[snapshot.size() * LocationSnapshot.FIELDS];
+        framePositions = new int[snapshot.size() * LocationSnapshot.FIELDS];
+        numPeople = Math.min(numPeople, snapshot.size());
+        drawnX = new int[numPeople];
+        drawnY = new int[numPeople];
+        Arrays.fill(drawnX, -1); // not drawn yet
+
+        // Load the background image - fully loaded here, since it is only drawn once
+        backgroundImage = new ImageIcon("src/medleySimulation/cover3.jpg").getImage();
 
         // Ensure the panel is transparent
         setOpaque(false);
@@ -57,19 +81,48 @@ public class StadiumView extends JPanel implements Runnable {
         Graphics2D g2 = (Graphics2D) g;
         int width = getWidth();
         int height = getHeight();
+        if (staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height) {
+            if (width <= 0 || height <= 0)
+                return;
+            staticLayer = renderStaticLayer(width, height);
+        }
+
+        // Only the clipped area is copied, so a small dirty region costs a small blit
+        g2.drawImage(staticLayer, 0, 0, null);
+
+        // Draw the ovals representing people in middle of grid block
+        Rectangle clip = g2.getClipBounds();
+        int x, y;
+        snapshot.readAll(paintPositions);
+        for (int i = 0, p = 0; i < numPeople; i++, p += LocationSnapshot.FIELDS) {
+            if ((paintPositions[p + 2] & LocationSnapshot.IN_STADIUM) != 0) {
+                x = (paintPositions[p] + xBorder) * wIncr;
+                y = (paintPositions[p + 1] + yBorder) * hIncr;
+                if (clip != null && !clip.intersects(x + wIncr, y, wIncr, hIncr))
+                    continue; // not in the region being repainted
+                g2.setColor(pplLocations[i].getColor());
+                g2.fillOval(x + wIncr, y, wIncr, hIncr);
+            }
+        }
+    }
+
+    // Draw everything that does not move - called only when the size changes
+    private BufferedImage renderStaticLayer(int width, int height) {
         wIncr = width / (maxX + xBorder * 2);
         hIncr = height / (maxY + yBorder * 2);
+        BufferedImage layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB); // opaque: the background covers it all
+        Graphics2D g2 = layer.createGraphics();
 
         // Draw the background image
-        g2.drawImage(backgroundImage, 0, 0, width, height, this);
+        g2.drawImage(backgroundImage, 0, 0, width, height, null);
 
         // Create a dark overlay
         g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, overlayAlpha));
-        g2.setColor(new Color(0, 0, 0)); // Black color for the overlay
+        g2.setColor(Color.black); // Black color for the overlay
         g2.fillRect(0, 0, width, height); // Fill the entire panel with the dark overlay
 
         // Reset the composite to default
-        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1.0f));
+        g2.setComposite(AlphaComposite.SrcOver);
 
         // Draw pool and concrete with transparency
         g2.setColor(water);
@@ -81,34 +134,22 @@ public class StadiumView extends JPanel implements Runnable {
         g2.setColor(Color.lightGray);
         g2.fillRect(wIncr * xBorder, (yBorder - 1) * hIncr, wIncr * (maxX), hIncr);
         g2.fillRect(wIncr * xBorder, (endPool + yBorder) * hIncr, wIncr * (maxX), hIncr);
-        g2.setColor(Color.black);
 
         // Draw lane lines
-        g2.setStroke(new BasicStroke(3));
+        g2.setStroke(laneStroke);
         int lane = 0, i = 0;
-        for (i = 0; i < maxX; i += 5) { // Columns
-            g2.setColor(laneColours[lane]);
+        for (i = 0; i < maxX; i += grid.getLaneSpacing()) { // Columns
+            g2.setColor(laneColours[lane % laneColours.length]);
             lane++;
             g2.drawLine((i + xBorder) * wIncr, hIncr * yBorder, (i + xBorder) * wIncr, (endPool + yBorder) * hIncr); // Draw lane lines
             g2.setColor(Color.white);
             g2.fillRect((i + 2 + xBorder) * wIncr, (endPool + yBorder) * hIncr, wIncr, hIncr); // Draw starting blocks outside pool
         }
-        g2.setColor(laneColours[lane]);
+        g2.setColor(laneColours[lane % laneColours.length]);
         g2.drawLine((i + xBorder) * wIncr, hIncr * yBorder, (i + xBorder) * wIncr, (endPool + yBorder) * hIncr); // Draw last lane line
 
-        // Draw the ovals representing people in middle of grid block
-        int x, y;
-        g2.setFont(new Font("Helvetica", Font.BOLD, hIncr / 2));
-
-        // Patrons
-        for (i = 0; i < numPeople; i++) {
-            if (pplLocations[i].inPool()) {
-                g2.setColor(pplLocations[i].getColor());
-                x = (pplLocations[i].getX() + xBorder) * wIncr;
-                y = (pplLocations[i].getY() + yBorder) * hIncr;
-                g2.fillOval(x + wIncr, y, wIncr, hIncr);
-            }
-        }
+        g2.dispose();
+        return layer;
     }
 
     public int getEndPool() {
@@ -117,12 +158,35 @@ public class StadiumView extends JPanel implements Runnable {
 
     public void setEndPool(int endPool) {
         this.endPool = endPool;
+        staticLayer = null; // pool edge moved - redraw it
+        repaint();
+    }
+
+    // Ask Swing to repaint just the block a person was drawn on
+    private void repaintBlock(int gridX, int gridY) {
+        int w = getWidth() / (maxX + xBorder * 2);
+        int h = getHeight() / (maxY + yBorder * 2);
+        repaint((gridX + xBorder + 1) * w, (gridY + yBorder) * h, w, h);
     }
 
     @Override
     public void run() {
         while (true) {
-            repaint();
+            // Repaint only the blocks people have left or arrived on since the last frame
+            snapshot.readAll(framePositions);
+            for (int i = 0, p = 0; i < numPeople; i++, p += LocationSnapshot.FIELDS) {
+                if ((framePositions[p + 2] & LocationSnapshot.IN_STADIUM) == 0)
+                    continue;
+                int x = framePositions[p];
+                int y = framePositions[p + 1];
+                if (x != drawnX[i] || y != drawnY[i]) {
+                    if (drawnX[i] >= 0)
+                        repaintBlock(drawnX[i], drawnY[i]);
+                    repaintBlock(x, y);
+                    drawnX[i] = x;
+                    drawnY[i] = y;
+                }
+            }
             try {
                 Thread.sleep(100); // Adjust sleep time as necessary
             } catch (InterruptedException e) {
@@ -6,45 +6,125 @@ package medleySimulation;
 import medleySimulation.Swimmer.SwimStroke;
 //import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SwimTeam extends Thread {
 
-	public static StadiumGrid stadium; // shared
+	private StadiumGrid stadium; // the stadium of the race the team is in
 	private Swimmer[] swimmers;
-	private int teamNo; // team number
+	private int teamNo; // team number - the lane in this race
 	private int entered = 1;
 	private CyclicBarrier barrier;
+	private RelayHandoff handoff; // changeovers in stroke order - reset for each race
+	private PeopleLocation[] locArr; // where everyone in the race is
+	private final AtomicInteger swimmersLeft = new AtomicInteger(); // still swimming this race
+	private final RaceSignal swimmersDone = new RaceSignal(); // opened when swimmersLeft reaches 0
+	private Runnable[] tasks; // each swimmer's run() for startOn, made once
 
 	// private CountDownLatch latch;
-	public static final int sizeOfTeam = 4;
+	public static final int sizeOfTeam = 4; // full medley team, one swimmer per stroke
 
-	SwimTeam(int ID, FinishCounter finish, PeopleLocation[] locArr,
+	SwimTeam(StadiumGrid stadium, int ID, FinishCounter finish, PeopleLocation[] locArr,
 			CyclicBarrier Barrier) {
+		this(stadium, ID, sizeOfTeam, finish, locArr, Barrier,
+				new RaceRandom(RaceRandom.randomSeed(), locArr.length));
+	}
+
+	// a team of the first teamSize strokes - the last of them swims the final leg.
+	// Speeds and arrival times come from each swimmer's stream in random
+	SwimTeam(StadiumGrid stadium, int ID, int teamSize, FinishCounter finish, PeopleLocation[] locArr,
+			CyclicBarrier Barrier, RaceRandom random) {
+		swimmers = new Swimmer[teamSize];
+		tasks = new Runnable[teamSize];
+		handoff = new RelayHandoff(teamSize);
+		SwimStroke[] strokes = SwimStroke.values(); // Get all enum constants
+		for (int i = ID * teamSize, s = 0; s < teamSize; i++, s++) {
+			int speed = random.speedFor(i); // range of speeds, unless they were given
+			Swimmer swimmer = new Swimmer(stadium, i, ID, null, finish, speed, strokes[s], Barrier, null,
+					random.forSwimmer(i));
+			swimmers[s] = swimmer;
+			tasks[s] = () -> {
+				try {
+					swimmer.run();
+				} finally {
+					swimmerDone();
+				}
+			};
+		}
+		prepareRace(stadium, ID, finish, locArr, Barrier);
+	}
+
+	// Put the team in a race, in lane ID of that stadium - the same swimmers can race
+	// again and again this way. The team must not be running; start it with startOn,
+	// since a finished Thread cannot be started twice
+	void prepareRace(StadiumGrid stadium, int ID, FinishCounter finish, PeopleLocation[] locArr,
+			CyclicBarrier Barrier) {
+		this.stadium = stadium;
 		this.teamNo = ID;
-		// this.latch = lt;
 		this.barrier = Barrier;
-		swimmers = new Swimmer[sizeOfTeam];
-		SwimStroke[] strokes = SwimStroke.values(); // Get all enum constants
-		stadium.returnStartingBlock(ID);
-
-		for (int i = teamNo * sizeOfTeam, s = 0; i < ((teamNo + 1) * sizeOfTeam); i++, s++) { // initialise swimmers in
-																								// team
-			locArr[i] = new PeopleLocation(i, strokes[s].getColour());
-			int speed = (int) (Math.random() * (3) + 30); // range of speeds
-			swimmers[s] = new Swimmer(i, teamNo, locArr[i], finish, speed, strokes[s], barrier); // hardcoded
-			// speed for now
+		this.locArr = locArr;
+		int teamSize = swimmers.length;
+		startCounting();
+		handoff.reset();
+
+		for (int i = teamNo * teamSize, s = 0; s < teamSize; i++, s++) { // initialise swimmers in team
+			locArr[i] = new PeopleLocation(i, swimmers[s].getSwimStroke().getColour());
+			locArr[i].setJournal(stadium.getJournal());
+			locArr[i].setSnapshot(stadium.getSnapshot());
+			swimmers[s].prepareRace(stadium, i, teamNo, locArr[i], finish, barrier, handoff);
+		}
+	}
+
+	// Race again in the same stadium and lane, after StadiumGrid.reset - nothing is
+	// allocated. Speeds and arrival streams come from the next race's random
+	void reset(RaceRandom random) {
+		startCounting();
+		handoff.reset();
+		for (int i = teamNo * swimmers.length, s = 0; s < swimmers.length; i++, s++) {
+			locArr[i].reset();
+			swimmers[s].reset(random.speedFor(i), random.forSwimmer(i));
 		}
 	}
 
+	private void startCounting() {
+		swimmersLeft.set(swimmers.length);
+		swimmersDone.close();
+	}
+
+	private void swimmerDone() {
+		if (swimmersLeft.decrementAndGet() == 0)
+			swimmersDone.open();
+	}
+
+	public int getTeamNo() {
+		return teamNo;
+	}
+
+	// Run each swimmer's lifecycle as a task on the executor instead of starting a
+	// thread per swimmer - the team itself does not need a thread in this mode.
+	// The executor must be able to run every swimmer at once, they block on each other
+	public void startOn(Executor executor) {
+		for (Runnable task : tasks)
+			executor.execute(task);
+	}
+
+	// wait until every swimmer in the team is done, whichever way they were run
+	public void awaitSwimmers() throws InterruptedException {
+		swimmersDone.await();
+	}
+
 	public void run() {
 		try {
-			for (int s = 0; s < sizeOfTeam; s++) { // start swimmer threads
+			for (int s = 0; s < swimmers.length; s++) { // start swimmer threads
 				swimmers[s].start();
 
 			}
 
-			for (int s = 0; s < sizeOfTeam; s++)
+			for (int s = 0; s < swimmers.length; s++) {
 				swimmers[s].join(); // don't really need to do this;
+				swimmerDone();
+			}
 
 		} catch (InterruptedException e) {
 			// TODO Auto-generated catch block
@@ -5,24 +5,26 @@
 package medleySimulation;
 
 import java.awt.Color;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 
 public class Swimmer extends Thread {
-	// Shared resources for all swimmers
-	public static StadiumGrid stadium; // The stadium grid shared among all swimmers
+	// Shared with the rest of the race - set for each race by prepareRace
+	private StadiumGrid stadium; // The stadium grid this race is in
 	private FinishCounter finish; // Object to keep track of race results
 
 	// Variables for each swimmer
 	private GridBlock currentBlock; // Current position of the swimmer on the grid
-	private Random rand; // Random number generator for simulating delays
+	private SplittableRandom rand; // This swimmer's own stream, for simulating delays
 	private int movingSpeed; // Swimmer's speed
 	private CyclicBarrier barrier; // Barrier to synchronize swimmers at the start of the race
 	private PeopleLocation myLocation; // Object representing the swimmer's location
 	private int ID; // Swimmer's unique ID
 	private int team; // Team ID that the swimmer belongs to
 	private GridBlock start; // Starting position of the swimmer
+	private RelayHandoff handoff; // changeovers within the team
+	private final int leg; // which leg this swimmer swims, 0 based
 
 	// Enum defining different swim strokes and their properties
 	public enum SwimStroke {
@@ -46,6 +48,11 @@ public class Swimmer extends Thread {
 			return order;
 		}
 
+		// Get the time taken for one stroke, per unit of swimmer speed
+		public double getStrokeTime() {
+			return strokeTime;
+		}
+
 		// Get the color representing the stroke
 		public Color getColour() {
 			return colour;
@@ -55,21 +62,41 @@ public class Swimmer extends Thread {
 	private final SwimStroke swimStroke; // The stroke style for this swimmer
 
 	// Constructor to initialize a swimmer
-	Swimmer(int ID, int t, PeopleLocation loc, FinishCounter f, int speed,
-			SwimStroke s, CyclicBarrier br) {
+	Swimmer(StadiumGrid stadium, int ID, int t, PeopleLocation loc, FinishCounter f, int speed,
+			SwimStroke s, CyclicBarrier br, RelayHandoff handoff, SplittableRandom rand) {
+		this.leg = RelayHandoff.legOf(s); // Leg follows the medley stroke order
 		this.swimStroke = s; // Assign stroke type to the swimmer
-		this.ID = ID; // Set swimmer ID
 		this.movingSpeed = speed; // Assign swimmer's speed
+		this.rand = rand; // Seeded stream from the race's RaceRandom
+		prepareRace(stadium, ID, t, loc, f, br, handoff);
+	}
+
+	// Put the swimmer in a race - the same swimmer (speed, stroke, random stream) can
+	// swim heat after heat, in a different stadium and lane each time. Only call it while
+	// the swimmer is not running; run() it again afterwards
+	void prepareRace(StadiumGrid stadium, int ID, int t, PeopleLocation loc, FinishCounter f, CyclicBarrier br,
+			RelayHandoff handoff) {
+		this.stadium = stadium;
+		this.handoff = handoff; // Team's relay changeover
+		this.ID = ID; // Set swimmer ID
 		this.myLocation = loc; // Set location object for swimmer
 		this.team = t; // Assign swimmer's team ID
 		this.barrier = br; // Set barrier for synchronization
 		this.start = stadium.returnStartingBlock(team); // Get starting block position for the swimmer's team
 		this.finish = f; // Assign the finish counter object
-
-		rand = new Random(); // Initialize random number generator
+		this.currentBlock = null;
 		stadium.inside[ID] = false; // Initially, swimmer is not inside the stadium
 	}
 
+	// Same race, same lane, again - after the stadium has been reset. Speed and stream
+	// come from the next race's RaceRandom
+	void reset(int speed, SplittableRandom rand) {
+		this.movingSpeed = speed;
+		this.rand = rand;
+		this.currentBlock = null;
+		stadium.inside[ID] = false;
+	}
+
 	// Getter for swimmer's current X coordinate
 	public int getX() {
 		return currentBlock.getX();
@@ -102,12 +129,16 @@ public class Swimmer extends Thread {
 		int y_st = start.getY(); // Y-coordinate of the starting block
 
 		// Move towards the starting block until swimmer reaches it
+		GridBlock door = currentBlock; // entrance we came in by
 		while (currentBlock != start) {
 			sleep(movingSpeed * 3); // Move slowly towards the starting block
-			currentBlock = stadium.moveTowards(currentBlock, x_st, y_st, myLocation); // Update current position
+			currentBlock = stadium.routeTowards(currentBlock, x_st, y_st, myLocation); // Update current position
+			if (door != null && currentBlock != door) {
+				stadium.leaveEntrance(myLocation); // off the entrance - let the next swimmer in
+				door = null;
+			}
 		}
-		System.out.println(
-				"-----------Thread " + this.ID + " at start " + currentBlock.getX() + " " + currentBlock.getY());
+		RaceLog.info(RaceLog.Event.AT_START, ID, currentBlock.getX(), currentBlock.getY());
 	}
 
 	// Swimmer dives into the pool
@@ -115,6 +146,8 @@ public class Swimmer extends Thread {
 		int x = currentBlock.getX();
 		int y = currentBlock.getY();
 		currentBlock = stadium.jumpTo(currentBlock, x, y - 2, myLocation); // Move swimmer into the pool
+		if (stadium.getJournal() != null)
+			stadium.getJournal().dive(ID, currentBlock);
 	}
 
 	// Swimmer swims to the end and back
@@ -125,12 +158,12 @@ public class Swimmer extends Thread {
 		while (currentBlock.getY() != 0) {
 			currentBlock = stadium.moveTowards(currentBlock, x, 0, myLocation); // Move towards the end
 			sleep((int) (movingSpeed * swimStroke.strokeTime)); // Simulate time taken for the stroke
-			System.out.println("Thread " + this.ID + " swimming at speed " + movingSpeed);
+			RaceLog.debug(RaceLog.Event.STROKE, ID, movingSpeed, currentBlock.getY());
 		}
 
 		// Swim back to the starting point
-		while (currentBlock.getY() != (StadiumGrid.start_y - 1)) {
-			currentBlock = stadium.moveTowards(currentBlock, x, StadiumGrid.start_y, myLocation); // Move back to start
+		while (currentBlock.getY() != (stadium.getStartY() - 1)) {
+			currentBlock = stadium.moveTowards(currentBlock, x, stadium.getStartY(), myLocation); // Move back to start
 			sleep((int) (movingSpeed * swimStroke.strokeTime)); // Simulate time taken for the stroke
 		}
 	}
@@ -152,56 +185,43 @@ public class Swimmer extends Thread {
 	public void run() {
 		try {
 			// Swimmer arrives at the stadium
-			sleep(movingSpeed + (rand.nextInt(10))); // Simulate varying arrival times
+			sleep(movingSpeed + RaceRandom.nextArrivalJitter(rand)); // Simulate varying arrival times
 			myLocation.setArrived(); // Mark swimmer as arrived
 
-			// Wait for the previous swimmer to enter the stadium
-			if (ID != 0) {
-				synchronized (stadium) {
-					while (!stadium.inside[ID - 1]) {
-						stadium.wait();
-					}
-				}
-			}
-
-			// Enter the stadium
+			// Enter the stadium - waits in the entrance queue until an entrance is free
 			enterStadium();
-
-			// Notify that this swimmer has entered the stadium
-			synchronized (stadium) {
-				stadium.inside[ID] = true;
-				stadium.notifyAll();
-			}
+			stadium.inside[ID] = true; // this swimmer has entered the stadium
 
 			// Go to starting blocks
 			goToStartingBlocks();
 
 			// Wait for all swimmers to reach the starting blocks
+			long barrierStart = RaceMetrics.enabled ? System.nanoTime() : 0;
 			barrier.await();
+			if (barrierStart != 0)
+				RaceMetrics.barrierWait.record(System.nanoTime() - barrierStart);
 
-			// Wait for all team members to be ready for the dive
-			synchronized (stadium) {
-				while (stadium.retrieveDive(team)) {
-					stadium.wait();
-				}
-				stadium.setDive(team, true); // Set team ready to dive
-			}
+			// Wait for the previous leg to touch - only this swimmer is woken for it
+			handoff.awaitTurn(leg);
 
 			// Swimmer dives into the pool
+			long legStart = finish.now();
 			dive();
 
 			// Swim the race
 			swimRace();
+			long legTime = finish.now() - legStart;
+			finish.recordSplit(team, swimStroke, legTime);
+			if (RaceMetrics.enabled)
+				RaceMetrics.legDuration[leg].record(legTime);
 
 			// Handle the finish of the race
-			if (swimStroke.order == 4) { // Last swimmer handles race finish
-				finish.finishRace(ID, team); // Record the first-place finish
+			if (handoff.isLastLeg(leg)) { // Last swimmer handles race finish
+				finish.finishRace(ID, team); // Record the team's place
 			} else {
-				// Notify and prepare for next swimmer
-				synchronized (stadium) {
-					stadium.setDive(team, false); // Swimmer finished, set flag to false
-					stadium.notifyAll(); // Notify other swimmers
-				}
+				int next = handoff.handOff(leg); // Next swimmer in stroke order may dive
+				if (stadium.getJournal() != null)
+					stadium.getJournal().handOff(ID, team, next);
 				exitPool(); // Exit the pool if not the last swimmer
 			}
 
@@ -0,0 +1,202 @@
+//A swimming meet: every team swims a heat, the fastest times go through to semifinals and
+//the fastest of those to a final. All the heats of a round are swum at the same time, each
+//in its own StadiumGrid with its own FinishCounter, with every swimmer a task on one shared
+//executor - so a round takes as long as its slowest heat, however many teams there are.
+//Teams and swimmers are created once and moved from stadium to stadium between rounds.
+
+package medleySimulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class Tournament {
+
+	// one team's swim in a round
+	static class Swim {
+		final int entry; // the team, numbered across the whole meet
+		final int heat; // heat in the round, 0 based
+		final int place; // place in the heat, 1 based
+		final long nanos; // finish time from the heat's start
+
+		Swim(int entry, int heat, int place, long nanos) {
+			this.entry = entry;
+			this.heat = heat;
+			this.place = place;
+			this.nanos = nanos;
+		}
+
+		@Override
+		public String toString() {
+			return entry + "@" + nanos / 1_000_000 + "ms";
+		}
+	}
+
+	// one heat being swum - its own stadium, finish line and barrier
+	private class Heat {
+		final int[] lanes; // entry in each lane
+		final FinishCounter finish;
+		final StadiumGrid stadium;
+
+		Heat(int heatNo, int[] lanes, boolean firstRound) throws InterruptedException {
+			this.lanes = lanes;
+			SimulationConfig heatConfig = config.copy().setNumTeams(lanes.length).setSpeeds(null);
+			finish = new FinishCounter(lanes.length);
+			stadium = new StadiumGrid(heatConfig, finish);
+			PeopleLocation[] people = new PeopleLocation[heatConfig.getNumSwimmers()];
+			CyclicBarrier barrier = new CyclicBarrier(lanes.length);
+			RaceRandom random = firstRound ? newTeamsRandom(heatNo, lanes) : null;
+			for (int lane = 0; lane < lanes.length; lane++) {
+				int entry = lanes[lane];
+				if (teams[entry] == null)
+					teams[entry] = new SwimTeam(stadium, lane, teamSize, finish, people, barrier, random);
+				else
+					teams[entry].prepareRace(stadium, lane, finish, people, barrier); // same swimmers, new heat
+			}
+		}
+
+		void start() {
+			if (stadium.getWatchdog() != null)
+				stadium.getWatchdog().start();
+			finish.startRace();
+			for (int entry : lanes)
+				teams[entry].startOn(executor);
+		}
+
+		List<Swim> await(int heatNo) throws InterruptedException {
+			for (int entry : lanes)
+				teams[entry].awaitSwimmers();
+			if (stadium.getWatchdog() != null) {
+				stadium.getWatchdog().stop();
+				System.out.println("heat=" + (heatNo + 1) + " " + stadium.getWatchdog());
+			}
+			List<Swim> swims = new ArrayList<>();
+			for (RacePlacing placing : finish.getPlacings())
+				swims.add(new Swim(lanes[placing.getTeam()], heatNo, placing.getPosition(), placing.getFinishNanos()));
+			return swims;
+		}
+	}
+
+	private final SimulationConfig config;
+	private final int entries; // teams in the meet
+	private final int teamSize;
+	private final int heatSize; // lanes in a heat
+	private final SwimTeam[] teams; // by entry - created in the first round
+	private final ExecutorService executor; // every swimmer of every heat in a round at once
+
+	Tournament(SimulationConfig config, ExecutorService executor) {
+		this.config = config.validate();
+		this.executor = executor;
+		entries = config.getNumTeams();
+		teamSize = config.getTeamSize();
+		heatSize = config.getHeatSize();
+		teams = new SwimTeam[entries];
+	}
+
+	// the swimmers of a first round heat, with their given speeds if there are any
+	private RaceRandom newTeamsRandom(int heatNo, int[] lanes) {
+		int[] speeds = config.getSpeeds();
+		int[] heatSpeeds = null;
+		if (speeds != null) {
+			heatSpeeds = new int[lanes.length * teamSize];
+			for (int lane = 0; lane < lanes.length; lane++)
+				System.arraycopy(speeds, lanes[lane] * teamSize, heatSpeeds, lane * teamSize, teamSize);
+		}
+		return new RaceRandom(config.getRaceSeed(heatNo + 1), lanes.length * teamSize, heatSpeeds);
+	}
+
+	// swim every heat of a round at once. field is in seeding order, fastest first, and is
+	// dealt across the heats so each heat gets a spread of times
+	List<Swim> runRound(int[] field) throws InterruptedException {
+		int heats = (field.length + heatSize - 1) / heatSize;
+		int[][] lanes = new int[heats][];
+		for (int h = 0; h < heats; h++)
+			lanes[h] = new int[field.length / heats + (h < field.length % heats ? 1 : 0)];
+		int[] filled = new int[heats];
+		for (int k = 0; k < field.length; k++)
+			lanes[k % heats][filled[k % heats]++] = field[k];
+
+		boolean firstRound = teams[field[0]] == null;
+		Heat[] round = new Heat[heats];
+		for (int h = 0; h < heats; h++)
+			round[h] = new Heat(h, lanes[h], firstRound);
+		for (Heat heat : round)
+			heat.start();
+		List<Swim> swims = new ArrayList<>();
+		for (int h = 0; h < heats; h++)
+			swims.addAll(round[h].await(h));
+		return swims;
+	}
+
+	// how many go through from a round of this many teams - two semifinals, then a final
+	int qualifiers(int fieldSize) {
+		return fieldSize > 2 * heatSize ? 2 * heatSize : heatSize;
+	}
+
+	// a round feeding the final is only a semifinal if heats fed it - the first round is
+	// always heats, however few of them there are
+	static String roundName(int roundNo, int heats, int nextHeats) {
+		if (heats == 1)
+			return "final";
+		return roundNo > 1 && nextHeats == 1 ? "semifinal" : "heat";
+	}
+
+	// run the meet, printing each round, and return the final's results
+	public List<Swim> run() throws InterruptedException {
+		int[] field = new int[entries];
+		for (int i = 0; i < entries; i++)
+			field[i] = i;
+		int roundNo = 1;
+		while (true) {
+			int heats = (field.length + heatSize - 1) / heatSize;
+			int nextHeats = (qualifiers(field.length) + heatSize - 1) / heatSize;
+			String name = roundName(roundNo, heats, nextHeats);
+			long start = System.nanoTime();
+			List<Swim> swims = runRound(field);
+			long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+			swims.sort(Comparator.comparingLong((Swim s) -> s.nanos));
+			System.out.println("round=" + roundNo + " name=" + name + " teams=" + field.length + " heats=" + heats
+					+ " elapsedMs=" + elapsedMs + " fastest=" + swims.subList(0, Math.min(3, swims.size())));
+			if (heats == 1)
+				return swims;
+			field = new int[Math.min(qualifiers(field.length), swims.size())];
+			for (int k = 0; k < field.length; k++)
+				field[k] = swims.get(k).entry; // fastest times go through, across all heats
+			roundNo++;
+		}
+	}
+
+	// usage: Tournament [--teams=200 --heatSize=10 --mode=virtual ...] - options as for
+	// HeadlessSimulation; teams is the number of teams in the meet
+	public static void main(String[] args) throws InterruptedException, IOException {
+		SimulationConfig config = SimulationConfig.fromArgs(args);
+		RaceLog.setLevel(config.getLogLevel());
+		if (config.isMetrics())
+			RaceMetrics.start(config.getMetricsDump());
+		ExecutorService executor = config.getExecutionMode() == ExecutionMode.VIRTUAL
+				? ExecutionMode.newVirtualThreadExecutor()
+				: Executors.newCachedThreadPool(); // swimmers block on each other - one thread each
+		System.out.println("config " + config + " heatSize=" + config.getHeatSize());
+
+		long start = System.nanoTime();
+		List<Swim> result = new Tournament(config, executor).run();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		executor.shutdown();
+		RaceLog.close();
+
+		StringBuilder placings = new StringBuilder();
+		for (int k = 0; k < result.size(); k++) {
+			if (k > 0)
+				placings.append(',');
+			placings.append(k + 1).append(':').append(result.get(k));
+		}
+		System.out.println("winner=" + result.get(0).entry + " placings=" + placings);
+		System.out.printf("teams=%d totalSeconds=%.3f%n", config.getNumTeams(), seconds);
+		if (config.isMetrics())
+			System.out.print(RaceMetrics.get().dump());
+	}
+}